@@ -0,0 +1,67 @@
+package dev.superman.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import dev.superman.server.protocols.AlertStore;
+import dev.superman.server.protocols.Requests.RequestType;
+import dev.superman.server.schema.Alert;
+
+/**
+ * Requesting and accepting alerts under contention.
+ *
+ * <p>Requests.addRequest and removeRequest keep their alerts in an {@link AlertStore} and
+ * then route the messages through a running Server's multicast groups, so the store is
+ * what is measured here: every operation adds an alert and claims the oldest one another
+ * user requested, which keeps the store small while the threads race for the same
+ * alerts.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlertBenchmark {
+    private AlertStore store;
+
+    @Setup
+    public void setup() {
+        store = new AlertStore();
+    }
+
+    @State(Scope.Thread)
+    public static class User {
+        String name;
+
+        @Setup
+        public void setup(ThreadParams threadParams) {
+            name = "user" + threadParams.getThreadIndex();
+        }
+    }
+
+    @Benchmark
+    public Alert addAndClaim(User user) {
+        store.add(RequestType.RESOURCES, user.name);
+        return store.claim(RequestType.RESOURCES, "acceptor");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Alert addAndClaimContended(User user) {
+        store.add(RequestType.RESOURCES, user.name);
+        return store.claim(RequestType.RESOURCES, user.name);
+    }
+}
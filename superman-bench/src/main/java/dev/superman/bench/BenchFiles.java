@@ -0,0 +1,26 @@
+package dev.superman.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Scratch directories for the benchmarks, so they never touch the server's db/ folder.
+ */
+final class BenchFiles {
+    private BenchFiles() {}
+
+    static Path createDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory("superman-bench-" + prefix);
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.superman.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, for example:
+ * <pre>
+ * java -jar superman-bench/target/benchmarks.jar              # everything
+ * java -jar superman-bench/target/benchmarks.jar Login -p users=1000
+ * java -jar superman-bench/target/benchmarks.jar -l           # list the benchmarks
+ * </pre>
+ *
+ * <p>Unless {@code -rf}/{@code -rff} are given, the results are also written as JSON to
+ * {@code results/jmh-<yyyyMMdd-HHmmss>.json}, one file per run, so runs can be compared
+ * over time with any JSON tool or the JMH visualizers.</p>
+ */
+public class BenchmarkRunner {
+    private static final DateTimeFormatter RUN_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue() && !commandLine.getResult().hasValue()) {
+            Path results = Paths.get("results");
+            Files.createDirectories(results);
+            options.resultFormat(ResultFormatType.JSON)
+                   .result(results.resolve("jmh-" + LocalDateTime.now().format(RUN_FORMAT) + ".json").toString());
+        }
+        Runner runner = new Runner(options.build());
+        if (commandLine.shouldList()) runner.list();
+        else runner.run();
+    }
+}
@@ -0,0 +1,113 @@
+package dev.superman.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.superman.server.loggerThread.LoggerThread;
+import dev.superman.server.protocols.ChatLog;
+import dev.superman.server.protocols.RoomLogWriter;
+
+/**
+ * Writing to and reading pages from a large chat room.
+ *
+ * <p>Each trial starts from an old-style room file of the given number of messages, which
+ * the {@link ChatLog} moves into its directory and indexes, as on the first start after an
+ * upgrade. addMessage measures what InputHandler.addMessage hands to the room's
+ * {@link RoomLogWriter} with the default durability; getMessages measures the page reads
+ * behind .history, at the end of the log and at random points.</p>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatLogBenchmark {
+    private static final int PAGE = 50;
+
+    @Param({"100000", "1000000"})
+    public int messages;
+
+    private Path directory;
+    private ChatLog chatLog;
+    private LoggerThread logger;
+    private RoomLogWriter writer;
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = BenchFiles.createDirectory("chat");
+        Path legacyFile = directory.resolve("BENCH.txt");
+        try (BufferedWriter out = Files.newBufferedWriter(legacyFile)) {
+            for (int i = 0; i < messages; i++) {
+                out.write("user" + (i % 100) + ": message number " + i + " in the benchmark room");
+                out.newLine();
+            }
+        }
+        chatLog = new ChatLog(directory.resolve("BENCH"), legacyFile);
+        logger = new LoggerThread(directory.resolve("log"));
+        logger.start();
+        writer = new RoomLogWriter("BENCH", chatLog, new LongAdder(), logger);
+        writer.start();
+        message = "bench: a new message of about the usual size\n".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        logger.stop();
+        BenchFiles.delete(directory);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void addMessage() throws IOException {
+        writer.append(message);
+    }
+
+    /**
+     * Four threads appending to the same room, which the writer commits in groups.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(4)
+    public void addMessageContended() throws IOException {
+        writer.append(message);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> getMessagesLatest() {
+        return chatLog.read(Long.MAX_VALUE, PAGE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<String> getMessagesRandom() {
+        return chatLog.read(PAGE + ThreadLocalRandom.current().nextLong(messages - PAGE), PAGE);
+    }
+}
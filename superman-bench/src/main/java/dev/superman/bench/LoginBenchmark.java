@@ -0,0 +1,89 @@
+package dev.superman.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import dev.superman.server.protocols.CredentialService;
+import dev.superman.server.protocols.UserRegistry;
+
+/**
+ * Login against user files of 1k to 1M entries.
+ *
+ * <p>InputHandler.verifyLogin is a lookup in the {@link UserRegistry} followed by a
+ * password check on the {@link CredentialService} pool; both are measured here on a user
+ * file in a scratch directory, because InputHandler always opens db/users.txt. Every user
+ * shares one cost-4 hash, so generating a million users stays fast and the password check
+ * does not hide the lookup; the server's default cost of 10 adds about 60 ms per login.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dsuperman.bcrypt.cost=4"})
+public class LoginBenchmark {
+    private static final String PASSWORD = "password";
+
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+
+    private Path directory;
+    private UserRegistry registry;
+    private CredentialService credentials;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = BenchFiles.createDirectory("login");
+        Path userFile = directory.resolve("users.txt");
+        String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(4));
+        try (BufferedWriter writer = Files.newBufferedWriter(userFile)) {
+            for (int i = 0; i < users; i++) {
+                writer.write("user" + i + "," + hash + ",CONVIDADO");
+                writer.newLine();
+            }
+        }
+        registry = new UserRegistry(userFile.toString());
+        credentials = new CredentialService(registry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchFiles.delete(directory);
+    }
+
+    /**
+     * The user lookup alone.
+     */
+    @Benchmark
+    public UserRegistry.UserEntry lookup() {
+        return registry.find("user" + ThreadLocalRandom.current().nextInt(users));
+    }
+
+    /**
+     * The whole of verifyLogin: lookup, admission control and BCrypt on the pool.
+     */
+    @Benchmark
+    public Boolean verifyLogin() {
+        UserRegistry.UserEntry user = registry.find("user" + ThreadLocalRandom.current().nextInt(users));
+        return credentials.verify(user, PASSWORD, "10.0.0.1").join();
+    }
+}
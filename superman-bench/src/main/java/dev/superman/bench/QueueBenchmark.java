@@ -0,0 +1,94 @@
+package dev.superman.bench;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+import dev.superman.ED.MpscQueue;
+
+/**
+ * Message handoff from several producers to one consumer, as in the UDP writer and the
+ * client's queues: three threads send, one drains.
+ *
+ * <p>Compares the {@link MpscQueue} the server uses now with the SynchronizedArrayList it
+ * replaced ({@link SynchronizedArrayListQueue}) and with a LinkedBlockingQueue. Producers
+ * wait while MAX_BACKLOG messages are queued, so a slow consumer cannot make the list
+ * grow without bound; the counter costs the same for every queue.</p>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    private static final int MAX_BACKLOG = 1024;
+    private static final String MESSAGE = "user: hello";
+
+    @Param({"MpscQueue", "SynchronizedArrayList", "LinkedBlockingQueue"})
+    public String queue;
+
+    private Handoff handoff;
+    private AtomicInteger backlog;
+
+    @Setup
+    public void setup() {
+        backlog = new AtomicInteger();
+        switch (queue) {
+            case "MpscQueue" -> {
+                MpscQueue<String> mpsc = new MpscQueue<>();
+                handoff = new Handoff(mpsc::add, mpsc::poll);
+            }
+            case "SynchronizedArrayList" -> {
+                SynchronizedArrayListQueue<String> list = new SynchronizedArrayListQueue<>();
+                handoff = new Handoff(list::add, () -> list.isEmpty() ? null : list.remove(0));
+            }
+            case "LinkedBlockingQueue" -> {
+                LinkedBlockingQueue<String> blocking = new LinkedBlockingQueue<>();
+                handoff = new Handoff(blocking::add, blocking::poll);
+            }
+            default -> throw new IllegalArgumentException("Unknown queue " + queue);
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(3)
+    public void send(Control control) {
+        while (backlog.get() >= MAX_BACKLOG) {
+            if (control.stopMeasurement) return; //o consumidor já parou no fim da iteração
+            Thread.yield();
+        }
+        backlog.incrementAndGet();
+        handoff.producer.accept(MESSAGE);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public String drain() {
+        String message = handoff.consumer.get();
+        if (message != null) backlog.decrementAndGet();
+        else Thread.yield();
+        return message;
+    }
+
+    private record Handoff(Consumer<String> producer, Supplier<String> consumer) {}
+}
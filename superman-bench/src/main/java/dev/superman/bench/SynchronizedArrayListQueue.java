@@ -0,0 +1,43 @@
+package dev.superman.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The lock-guarded list the server used as the UDP and client message queues before
+ * {@link dev.superman.ED.MpscQueue} replaced it, kept here as the baseline: producers add
+ * under the lock and the consumer checks isEmpty and removes index 0, which shifts the
+ * whole list.
+ */
+class SynchronizedArrayListQueue<T> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<T> list = new ArrayList<>();
+
+    boolean add(T element) {
+        lock.lock();
+        try {
+            return list.add(element);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return list.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    T remove(int index) {
+        lock.lock();
+        try {
+            return list.remove(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package dev.superman.ED;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool of direct buffers of one size, so that a thread that receives data into a buffer
+ * and hands it to another thread to be written does not allocate one per message.
+ *
+ * <p>acquire takes a free buffer, or allocates one when none is free; release puts it back
+ * once its contents are no longer needed. At most maxPooled free buffers are kept, the
+ * others are left to the garbage collector, so a burst does not hold its memory forever.</p>
+ */
+public class BufferPool {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer[] free;
+    private final int bufferSize;
+    private int size;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) throw new IllegalArgumentException("bufferSize and maxPooled must be positive");
+        this.bufferSize = bufferSize;
+        free = new ByteBuffer[maxPooled];
+    }
+
+    /**
+     * Takes a cleared buffer from the pool.
+     *
+     * @return a direct buffer with position 0 and limit at its capacity
+     */
+    public ByteBuffer acquire() {
+        lock.lock();
+        try {
+            if (size > 0) {
+                ByteBuffer buffer = free[--size];
+                free[size] = null;
+                return buffer.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer taken with acquire. The caller must not use it afterwards.
+     *
+     * @param buffer the buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        lock.lock();
+        try {
+            if (size < free.length) free[size++] = buffer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package dev.superman.ED;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.superman.server.ServerThreads;
+
+/**
+ * A hashed timing wheel that runs many timeouts on a single thread.
+ *
+ * <p>The wheel has a fixed number of buckets, each covering one tick. A timeout is put in
+ * the bucket of its deadline's tick together with the number of full turns of the wheel
+ * left before it is due, so scheduling and cancelling are O(1) whatever the number of
+ * pending timeouts. Deadlines are rounded up to the next tick.</p>
+ *
+ * <p>New timeouts are handed to the worker through an {@link MpscQueue}, so callers never
+ * lock. The worker ticks only while timeouts are scheduled and parks on the queue
+ * otherwise. Tasks run on the worker thread and must be short; a task that throws does
+ * not stop the timer.</p>
+ */
+public final class HashedWheelTimer {
+    private final long tickNanos;
+    private final List<Timeout>[] wheel;
+    private final int mask;
+    private final MpscQueue<Timeout> incoming;
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running;
+    private long tick;
+    private int scheduled;
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("tickDuration must be positive");
+        int buckets = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        tickNanos = unit.toNanos(tickDuration);
+        wheel = newWheel(buckets);
+        for (int i = 0; i < buckets; i++) wheel[i] = new ArrayList<>();
+        mask = buckets - 1;
+        incoming = new MpscQueue<>();
+        startTime = System.nanoTime();
+        running = true;
+        worker = ServerThreads.start(name, this::run);
+    }
+
+    @SuppressWarnings("unchecked") //não há arrays de tipos genéricos
+    private static List<Timeout>[] newWheel(int buckets) {
+        return (List<Timeout>[]) new List<?>[buckets];
+    }
+
+    /**
+     * Schedules a task to run once after a delay.
+     *
+     * @param task the task to run on the timer thread
+     * @param delay the delay before the task runs
+     * @param unit the unit of the delay
+     * @return a handle to cancel the task
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the worker thread. Pending timeouts are discarded.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                if (scheduled == 0) {
+                    Timeout timeout = incoming.take();
+                    tick = (System.nanoTime() - startTime) / tickNanos;
+                    schedule(timeout);
+                }
+                long deadline = startTime + (tick + 1) * tickNanos;
+                long wait;
+                while ((wait = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    if (Thread.interrupted()) return;
+                }
+                tick++;
+                Timeout timeout;
+                while ((timeout = incoming.poll()) != null) schedule(timeout);
+                expire(wheel[(int) (tick & mask)]);
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+    }
+
+    private void schedule(Timeout timeout) {
+        if (timeout.cancelled) return;
+        long deadlineTick = Math.max(tick, (timeout.deadline - startTime + tickNanos - 1) / tickNanos);
+        timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+        wheel[(int) (deadlineTick & mask)].add(timeout);
+        scheduled++;
+    }
+
+    private void expire(List<Timeout> bucket) {
+        Iterator<Timeout> it = bucket.iterator();
+        List<Timeout> due = null;
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+                scheduled--;
+            } else if (timeout.remainingRounds <= 0) {
+                it.remove();
+                scheduled--;
+                if (due == null) due = new ArrayList<>();
+                due.add(timeout);
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+        if (due == null) return;
+        for (Timeout timeout : due) {
+            if (timeout.cancelled) continue;
+            timeout.expired = true;
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A task scheduled on the timer.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task. It will not run unless it is already running.
+         *
+         * @return true if the task had not run yet
+         */
+        public boolean cancel() {
+            cancelled = true;
+            return !expired;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+    }
+}
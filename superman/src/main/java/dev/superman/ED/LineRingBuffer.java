@@ -0,0 +1,93 @@
+package dev.superman.ED;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed-capacity buffer of the most recent lines of text, kept as UTF-8 bytes.
+ * When the buffer is full, adding a line overwrites the oldest one.
+ *
+ * <p>Every slot keeps its byte array, so adding a line copies its bytes without allocating
+ * unless it is longer than any line the slot held before. Lines are only decoded to
+ * strings by snapshot.</p>
+ */
+public class LineRingBuffer {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final byte[][] lines;
+    private final int[] lengths;
+    private int next;
+    private int size;
+
+    public LineRingBuffer(int capacity, int lineBytes) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        lines = new byte[capacity][lineBytes];
+        lengths = new int[capacity];
+    }
+
+    /**
+     * Adds a line given as a string.
+     *
+     * @param line the line, without its line terminator
+     */
+    public void add(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        add(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Copies a line from a region of a buffer. The buffer's position and limit are not changed.
+     *
+     * @param source the buffer holding the line
+     * @param from the index of the line's first byte
+     * @param to the index after the line's last byte, without its line terminator
+     */
+    public void add(ByteBuffer source, int from, int to) {
+        int length = to - from;
+        lock.lock();
+        try {
+            if (lines[next].length < length) lines[next] = new byte[length];
+            source.get(from, lines[next], 0, length);
+            lengths[next] = length;
+            next = (next + 1) % lines.length;
+            if (size < lines.length) size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lines, from the oldest to the most recent.
+     *
+     * @return the lines currently in the buffer
+     */
+    public List<String> snapshot() {
+        lock.lock();
+        try {
+            List<String> result = new ArrayList<>(size);
+            int first = (next - size + lines.length) % lines.length;
+            for (int i = 0; i < size; i++) {
+                int slot = (first + i) % lines.length;
+                result.add(new String(lines[slot], 0, lengths[slot], StandardCharsets.UTF_8));
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return lines.length;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
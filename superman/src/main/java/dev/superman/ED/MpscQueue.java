@@ -0,0 +1,124 @@
+package dev.superman.ED;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An unbounded, lock-free queue for many producers and a single consumer.
+ *
+ * <p>Producers link a new node with one atomic swap of the tail and never wait for each
+ * other or for the consumer. The consumer walks the nodes from the head without any
+ * atomic operation. When the queue is empty, {@link #take()} parks the consumer and the
+ * first producer that claims the parked consumer unparks it, so a burst of adds costs a
+ * single wakeup.</p>
+ *
+ * <p>poll, take, drainTo, isEmpty and clear must only be called by one thread at a time.
+ * The consumer may be replaced by another thread once the previous one has exited, for
+ * example after joining it.</p>
+ */
+public class MpscQueue<T> {
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;
+    private final AtomicReference<Thread> waiter;
+
+    public MpscQueue() {
+        Node<T> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+        waiter = new AtomicReference<>();
+    }
+
+    /**
+     * Adds an element to the tail of the queue and wakes the consumer if it is parked.
+     * Never blocks.
+     *
+     * @param element the element to add
+     * @return always true
+     */
+    public boolean add(T element) {
+        Node<T> node = new Node<>(Objects.requireNonNull(element));
+        tail.getAndSet(node).next = node;
+        Thread consumer = waiter.get();
+        if (consumer != null && waiter.compareAndSet(consumer, null)) LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head of the queue. Consumer only.
+     *
+     * @return the head element, or null if the queue is empty
+     */
+    public T poll() {
+        Node<T> next = head.next;
+        if (next == null) return null;
+        T element = next.element;
+        next.element = null;
+        head.next = head; //desliga o nó antigo, para não reter os novos no GC
+        head = next;
+        return element;
+    }
+
+    /**
+     * Removes the element at the head of the queue, parking until one is added.
+     * Consumer only.
+     *
+     * @return the head element
+     * @throws InterruptedException if the consumer is interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+        T element;
+        while ((element = poll()) == null) {
+            waiter.set(Thread.currentThread());
+            if ((element = poll()) == null) LockSupport.park(this);
+            waiter.set(null);
+            if (element != null) return element;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return element;
+    }
+
+    /**
+     * Moves up to maxElements elements from the head of the queue into a collection.
+     * Consumer only.
+     *
+     * @param collection the collection to add the elements to
+     * @param maxElements the maximum number of elements to move
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        int drained = 0;
+        T element;
+        while (drained < maxElements && (element = poll()) != null) {
+            collection.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Checks if the queue has no element ready to be taken. Consumer only.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    /**
+     * Discards every element in the queue. Consumer only.
+     */
+    public void clear() {
+        while (poll() != null);
+    }
+
+    private static class Node<T> {
+        private T element;
+        private volatile Node<T> next;
+
+        Node(T element) {
+            this.element = element;
+        }
+    }
+}
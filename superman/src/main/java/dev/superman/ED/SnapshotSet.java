@@ -0,0 +1,99 @@
+package dev.superman.ED;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A copy-on-write set for registries that are read far more often than they change,
+ * such as the multicast groups of the server.
+ *
+ * <p>The elements are kept in an immutable array. Adding or removing an element copies
+ * the array and installs the copy with a compare-and-set, retrying if another thread
+ * changed the set in the meantime. Readers never lock: {@link #iterator()} and
+ * {@link #snapshot()} see the set as it was when they were called and can never throw a
+ * ConcurrentModificationException.</p>
+ *
+ * <p>Elements are compared with equals, and each element is stored at most once.</p>
+ */
+public class SnapshotSet<T> implements Iterable<T> {
+    private final AtomicReference<Object[]> elements = new AtomicReference<>(new Object[0]);
+
+    /**
+     * Adds an element if it is not already in the set.
+     *
+     * @param element the element to add
+     * @return true if the element was added, false if it was already in the set
+     */
+    public boolean add(T element) {
+        while (true) {
+            Object[] current = elements.get();
+            if (indexOf(current, element) >= 0) return false;
+            Object[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = element;
+            if (elements.compareAndSet(current, updated)) return true;
+        }
+    }
+
+    /**
+     * Removes an element. When several threads remove the same element, exactly one of
+     * them gets true, so removal can be used to claim an element.
+     *
+     * @param element the element to remove
+     * @return true if the element was removed, false if it was not in the set
+     */
+    public boolean remove(T element) {
+        while (true) {
+            Object[] current = elements.get();
+            int index = indexOf(current, element);
+            if (index < 0) return false;
+            Object[] updated = new Object[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (elements.compareAndSet(current, updated)) return true;
+        }
+    }
+
+    public boolean contains(T element) {
+        return indexOf(elements.get(), element) >= 0;
+    }
+
+    /**
+     * Returns an immutable view of the elements at the time of the call.
+     *
+     * @return the elements, in the order they were added
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> snapshot() {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(elements.get()));
+    }
+
+    /**
+     * Returns an iterator over the elements at the time of the call. The iterator does not
+     * support remove; use {@link #remove(Object)} instead.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot().iterator();
+    }
+
+    public boolean isEmpty() {
+        return elements.get().length == 0;
+    }
+
+    public int size() {
+        return elements.get().length;
+    }
+
+    public void clear() {
+        elements.set(new Object[0]);
+    }
+
+    private static int indexOf(Object[] array, Object element) {
+        for (int i = 0; i < array.length; i++)
+            if (array[i].equals(element)) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,144 @@
+package dev.superman.ED;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A bounded ring for one producer and one consumer, in the style of the LMAX Disruptor.
+ *
+ * <p>The slots are allocated once, with a power-of-two capacity so a sequence number maps
+ * to its slot with a mask. The producer publishes an element by advancing the produced
+ * sequence and the consumer frees slots by advancing the consumed one; each side keeps a
+ * cached copy of the other's sequence and only reads the shared one when the cache says the
+ * ring is full or empty. {@link #offer(Object)} never blocks: when the ring is full it
+ * returns false and the producer decides what to do with the element.</p>
+ *
+ * <p>{@link #drain(Consumer, int)} hands the consumer every element published so far, up to
+ * a maximum, and frees their slots with a single write, so a consumer that falls behind
+ * catches up in batches. When the ring is empty, {@link #await()} parks the consumer until
+ * the producer publishes.</p>
+ *
+ * <p>offer must only be called by one thread at a time, and drain and await by one other.</p>
+ */
+public class SpscRingBuffer<T> {
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong produced;
+    private final AtomicLong consumed;
+    private final AtomicReference<Thread> waiter;
+    private long cachedConsumed; //só o produtor lê e escreve
+    private long cachedProduced; //só o consumidor lê e escreve
+
+    /**
+     * Creates a ring with at least the given capacity, rounded up to a power of two.
+     *
+     * @param capacity the minimum number of slots
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        slots = new Object[size];
+        mask = size - 1;
+        produced = new AtomicLong();
+        consumed = new AtomicLong();
+        waiter = new AtomicReference<>();
+    }
+
+    /**
+     * Publishes an element and wakes the consumer if it is parked. Producer only.
+     *
+     * @param element the element to publish
+     * @return true if it was published, false if the ring is full
+     */
+    public boolean offer(T element) {
+        long sequence = produced.getPlain();
+        if (sequence - cachedConsumed >= slots.length) {
+            cachedConsumed = consumed.get();
+            if (sequence - cachedConsumed >= slots.length) return false;
+        }
+        slots[(int) sequence & mask] = element;
+        produced.set(sequence + 1); //escrita volátil: a leitura do waiter abaixo não passa à frente dela
+        Thread consumer = waiter.get();
+        if (consumer != null && waiter.compareAndSet(consumer, null)) LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * Tells whether the ring is full, so that the producer can skip preparing an element
+     * that offer would refuse. Producer only; the consumer can only make room meanwhile.
+     *
+     * @return true if offer would return false now
+     */
+    public boolean isFull() {
+        long sequence = produced.getPlain();
+        if (sequence - cachedConsumed < slots.length) return false;
+        cachedConsumed = consumed.get();
+        return sequence - cachedConsumed >= slots.length;
+    }
+
+    /**
+     * Passes the published elements to the handler, from the oldest, and frees their slots
+     * once all of them have been handled. Consumer only.
+     *
+     * @param handler called with every element
+     * @param max the maximum number of elements to handle
+     * @return the number of elements handled, 0 if the ring was empty
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super T> handler, int max) {
+        long sequence = consumed.getPlain();
+        if (cachedProduced - sequence < max) { //a cópia pode estar atrasada em relação ao produtor
+            cachedProduced = produced.get();
+            if (cachedProduced - sequence <= 0) return 0;
+        }
+        int count = (int) Math.min(cachedProduced - sequence, max);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (sequence + i) & mask;
+            T element = (T) slots[slot];
+            slots[slot] = null;
+            handler.accept(element);
+        }
+        consumed.lazySet(sequence + count);
+        return count;
+    }
+
+    /**
+     * Parks until at least one element is published. Consumer only.
+     *
+     * @throws InterruptedException if the consumer is interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        while (isEmpty()) {
+            waiter.set(Thread.currentThread());
+            if (isEmpty()) LockSupport.park(this);
+            waiter.set(null);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Tells whether every published element has been drained.
+     *
+     * @return true if the ring is empty
+     */
+    public boolean isEmpty() {
+        return produced.get() == consumed.get();
+    }
+
+    /**
+     * Retrieves the number of elements published and not yet drained. May be called by any thread.
+     *
+     * @return the number of elements in the ring
+     */
+    public int size() {
+        long consumedNow = consumed.get();
+        return (int) Math.max(0, produced.get() - consumedNow);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
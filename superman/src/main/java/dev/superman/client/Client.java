@@ -3,7 +3,7 @@ package dev.superman.client;
 import java.io.IOException;
 import java.net.UnknownHostException;
 
-import dev.superman.ED.SynchronizedArrayList;
+import dev.superman.ED.MpscQueue;
 import dev.superman.client.Threads.InputThread;
 import dev.superman.client.Threads.TCPHandlerThread;
 import dev.superman.client.schema.User;
@@ -11,12 +11,12 @@ import dev.superman.client.schema.User;
 /**
  * The Client class initializes and starts the necessary threads for handling
  * TCP and UDP messages for a user. It creates instances of User, TCPHandlerThread,
- * SynchronizedArrayList for UDP messages, and InputThread.
+ * an MpscQueue for UDP messages, and InputThread.
  * 
  * <p>The Client class performs the following actions:
  * <ul>
  *   <li>Initializes a User object.</li>
- *   <li>Initializes a SynchronizedArrayList to store UDP messages.</li>
+ *   <li>Initializes an MpscQueue to store UDP messages.</li>
  *   <li>Creates and starts a TCPHandlerThread to handle TCP messages.</li>
  *   <li>Creates and starts an InputThread to handle input and UDP messages.</li>
  * </ul>
@@ -30,12 +30,12 @@ import dev.superman.client.schema.User;
 public class Client {
     private User user;
     private TCPHandlerThread tcpHandlerThread;
-    private SynchronizedArrayList<String> udpMessages;
+    private MpscQueue<String> udpMessages;
     private InputThread inputThread;
 
     public Client() throws UnknownHostException, IOException {
         user = new User();
-        udpMessages = new SynchronizedArrayList<>();
+        udpMessages = new MpscQueue<>();
         tcpHandlerThread = new TCPHandlerThread(user, udpMessages);
         inputThread = new InputThread(tcpHandlerThread.getTcpMessages(), udpMessages);
         tcpHandlerThread.start();
@@ -0,0 +1,57 @@
+package dev.superman.client.Threads;
+
+/**
+ * ClientListener receives what a client session gets from the server, so the same
+ * TCPHandlerThread and UDPHandlerThread can serve the console client and headless ones
+ * such as the load generator.
+ *
+ * <p>Both message methods are called from the session's reader threads, one line or
+ * datagram at a time, and must not block for long.</p>
+ */
+public interface ClientListener {
+
+    /**
+     * The listener of the console client, which prints every message.
+     */
+    ClientListener CONSOLE = new ClientListener() {
+        @Override
+        public void serverMessage(String message) {
+            System.out.println(message);
+        }
+
+        @Override
+        public void chatMessage(String message) {
+            System.out.println(message);
+        }
+    };
+
+    /**
+     * Called for every line sent by the server over TCP that is meant for the user.
+     * Protocol lines handled by the session itself (ping, userinfo and chat) are not passed on,
+     * except for the greeting carried by userinfo.
+     *
+     * @param message the line received
+     */
+    void serverMessage(String message);
+
+    /**
+     * Called for every datagram received from the multicast group of the current room.
+     *
+     * @param message the text of the datagram
+     */
+    void chatMessage(String message);
+
+    /**
+     * Called once the multicast group of a room has been joined, so messages sent from
+     * now on reach the room.
+     *
+     * @param address the address of the room's multicast group
+     * @param port the port of the room's multicast group
+     */
+    default void roomJoined(String address, int port) {}
+
+    /**
+     * Called when the connection to the server is closed.
+     */
+    default void disconnected() {}
+}
@@ -1,14 +1,22 @@
 package dev.superman.client.Threads;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 
-import dev.superman.ED.SynchronizedArrayList;
+import dev.superman.ED.MpscQueue;
 import dev.superman.client.schema.User;
+import dev.superman.wire.FrameReader;
+import dev.superman.wire.FrameWriter;
+import dev.superman.wire.Wire;
 
 /**
  * TCPHandlerThread is a class that extends the Thread class and handles TCP communication.
@@ -16,57 +24,133 @@ import dev.superman.client.schema.User;
  * 
  * <p>Fields:</p>
  * <ul>
- *   <li>ADDRESS: The IP address of the server to connect to.</li>
- *   <li>PORT: The port number of the server to connect to.</li>
+ *   <li>ADDRESS: The default IP address of the server, from superman.client.host (127.0.0.1).</li>
+ *   <li>PORT: The default port number of the server, from superman.client.port (7).</li>
+ *   <li>BINARY: Whether to ask the server for the binary protocol (see {@link Wire}), set
+ *       with superman.client.protocol=binary; the default is the text protocol.</li>
  *   <li>clientSocket: The socket used for the client connection.</li>
+ *   <li>input: The buffered stream of the socket, read by the reader thread.</li>
+ *   <li>binary: Whether the server accepted the binary protocol. A server that does not
+ *       speak it answers the negotiation with text, and the client reconnects with the text protocol.</li>
  *   <li>readerThread: The thread responsible for reading messages from the server.</li>
  *   <li>writerThread: The thread responsible for sending messages to the server.</li>
- *   <li>tcpMessages: A synchronized list of TCP messages to be sent.</li>
- *   <li>udpMessages: A synchronized list of UDP messages received.</li>
+ *   <li>tcpMessages: A queue of TCP messages to be sent.</li>
+ *   <li>udpMessages: A queue of UDP messages to be sent to the current room.</li>
  *   <li>udpHandlerThread: The thread responsible for handling UDP communication.</li>
  *   <li>user: The user associated with this TCP connection.</li>
+ *   <li>listener: Receives the messages for the user, printed by the console client.</li>
  * </ul>
  * 
  * <p>Constructor:</p>
  * <ul>
- *   <li>TCPHandlerThread(User user, SynchronizedArrayList<String> udpMessages): Initializes the client socket, 
- *       reader and writer threads, and starts the threads.</li>
+ *   <li>TCPHandlerThread(User user, MpscQueue<String> udpMessages): Connects to the default server
+ *       and prints the messages to the console.</li>
+ *   <li>TCPHandlerThread(User user, MpscQueue<String> udpMessages, String address, int port, ClientListener listener):
+ *       Initializes the client socket, reader and writer threads, and starts the threads.</li>
  * </ul>
  * 
  */
 public class TCPHandlerThread extends Thread {
-    private static String ADDRESS = "127.0.0.1";
-    private static int PORT = 7;
+    private static final String ADDRESS = System.getProperty("superman.client.host", "127.0.0.1");
+    private static final int PORT = Integer.getInteger("superman.client.port", 7);
+    private static final int MAX_BATCH = 64;
+    private static final boolean BINARY = "binary".equalsIgnoreCase(System.getProperty("superman.client.protocol", "text"));
     private Socket clientSocket;
+    private BufferedInputStream input;
+    private boolean binary;
     private ReaderThread readerThread;
     private WriterThread writerThread;
-    private SynchronizedArrayList<String> tcpMessages;
-    private SynchronizedArrayList<String> udpMessages;
+    private MpscQueue<String> tcpMessages;
+    private MpscQueue<String> udpMessages;
     private UDPHandlerThread udpHandlerThread;
     private User user;
+    private ClientListener listener;
 
-    public TCPHandlerThread(User user, SynchronizedArrayList<String> udpMessages) throws UnknownHostException, IOException {
-        clientSocket = new Socket(ADDRESS, PORT);
+    public TCPHandlerThread(User user, MpscQueue<String> udpMessages) throws UnknownHostException, IOException {
+        this(user, udpMessages, ADDRESS, PORT, ClientListener.CONSOLE);
+    }
+
+    public TCPHandlerThread(User user, MpscQueue<String> udpMessages, String address, int port, ClientListener listener) throws UnknownHostException, IOException {
+        clientSocket = new Socket(address, port);
+        input = new BufferedInputStream(clientSocket.getInputStream());
+        if (BINARY && !(binary = negotiate())) { //o servidor só fala texto e leu a negociação como nome
+            clientSocket.close();
+            clientSocket = new Socket(address, port);
+            input = new BufferedInputStream(clientSocket.getInputStream());
+        }
         readerThread = new ReaderThread();
         writerThread = new WriterThread();
-        tcpMessages = new SynchronizedArrayList<>();
+        tcpMessages = new MpscQueue<>();
         this.udpMessages = udpMessages;
         udpHandlerThread = null;
         this.user = user;
+        this.listener = listener;
         tcpMessages.add(user.getTemporaryName());
         readerThread.start();
         writerThread.start();
     }
 
     /**
-     * Retrieves the list of TCP messages.
+     * Retrieves the queue of TCP messages.
      *
-     * @return a SynchronizedArrayList containing the TCP messages.
+     * @return an MpscQueue containing the TCP messages to be sent.
      */
-    public SynchronizedArrayList<String> getTcpMessages() {
+    public MpscQueue<String> getTcpMessages() {
         return tcpMessages;
     }
 
+    /**
+     * Asks the server for the binary protocol and reads its answer.
+     *
+     * @return true if the server answered with MAGIC and a version, false if it answered text
+     * @throws IOException if the connection fails
+     */
+    private boolean negotiate() throws IOException {
+        OutputStream out = clientSocket.getOutputStream();
+        out.write(new byte[] {Wire.MAGIC, (byte) Wire.VERSION, '\n'});
+        out.flush();
+        input.mark(1);
+        if (input.read() != (Wire.MAGIC & 0xFF)) {
+            input.reset();
+            return false;
+        }
+        return input.read() >= 1;
+    }
+
+    /**
+     * Handles a userinfo reply: updates the user's name and passes the message on.
+     */
+    private void userInfo(String name, String message) {
+        user.setName(name);
+        if (message.equals("Welcome to the chat server " + user.getName())) user.setTemporaryName(name);//guarda o nome temporário Guest-XXX
+        listener.serverMessage(message);
+    }
+
+    /**
+     * Handles a chat reply: leaves the current room's group and joins the new one, if any.
+     *
+     * @param address the address of the room's group, or null when the user has no room
+     * @param port the port of the room's group
+     */
+    private void chat(String address, int port) throws IOException {
+        if (udpHandlerThread != null) udpHandlerThread.closeConnection();
+        udpHandlerThread = null;
+        if (address != null) {
+            udpHandlerThread = new UDPHandlerThread(user, address, port, udpMessages, listener);
+            listener.roomJoined(address, port);
+        }
+    }
+
+    /**
+     * Closes the connection to the server. The reader thread then closes the UDP
+     * connection, stops the writer thread and notifies the listener.
+     */
+    public void closeConnection() {
+        try {
+            clientSocket.close();
+        } catch (IOException ignored) {}
+    }
+
     /**
      * ReaderThread is a private inner class that extends Thread.
      * It is responsible for reading input from a BufferedReader connected to a client socket.
@@ -77,9 +161,14 @@ public class TCPHandlerThread extends Thread {
      * 
      * Methods:
      * - run(): The main execution method of the thread. It continuously reads input lines from the BufferedReader.
-     *   - If the input starts with "userinfo", it updates the user's name and prints a welcome message.
+     *   - If the input is "ping", the server's heartbeat, it queues a ".pong" answer.
+     *   - If the input starts with "userinfo", it updates the user's name and passes the welcome message to the listener.
      *   - If the input starts with "chat", it manages the UDPHandlerThread for chat communication.
-     *   - For any other input, it simply prints the input.
+     *   - Any other input is passed to the listener.
+     *   In the binary protocol it reads frames instead and handles PING, USERINFO, CHAT and
+     *   CHAT_OFF the same way, passing every line of a TEXT frame to the listener.
+     * When the server closes the connection, it closes the UDP connection, stops the writer thread
+     * and notifies the listener.
      * 
      * Exception Handling:
      * - IOException: Any IOException encountered during reading is ignored.
@@ -88,29 +177,62 @@ public class TCPHandlerThread extends Thread {
         private BufferedReader in;
 
         public ReaderThread() throws IOException {
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            if (!binary) in = new BufferedReader(new InputStreamReader(input));
         }
 
         @Override
         public void run() {
-            String input;
             try {
-                while ((input = in.readLine()) != null) {
-                    if (input.startsWith("userinfo")) {
-                        String[] inputArray = input.split(" ");
-                        user.setName(inputArray[1]);
-                        if (inputArray[2].equals("Welcome_to_the_chat_server_" + user.getName())) user.setTemporaryName(inputArray[1]);//guarda o nome temporário Guest-XXX
-                        System.out.println(inputArray[2].replaceAll("_", " "));
-                    } else if (input.startsWith("chat")) {
-                        String[] inputArray = input.split(" ");
-                        if (udpHandlerThread != null) udpHandlerThread.closeConnection();
-                        if (!inputArray[1].equals("off")) 
-                            udpHandlerThread = new UDPHandlerThread(user, inputArray[1], Integer.valueOf(inputArray[2]), udpMessages);
-                    } else {
-                        System.out.println(input);
-                    }
-                }
+                if (binary) readFrames();
+                else readLines();
             } catch (IOException ignored) {}
+            if (udpHandlerThread != null) udpHandlerThread.closeConnection();
+            writerThread.interrupt();
+            listener.disconnected();
+        }
+
+        private void readLines() throws IOException {
+            String input;
+            while ((input = in.readLine()) != null) {
+                if (input.equals("ping")) { //heartbeat do servidor
+                    tcpMessages.add(".pong");
+                } else if (input.startsWith("userinfo")) {
+                    String[] inputArray = input.split(" ");
+                    userInfo(inputArray[1], inputArray[2].replaceAll("_", " "));
+                } else if (input.startsWith("chat")) {
+                    String[] inputArray = input.split(" ");
+                    if (inputArray[1].equals("off")) chat(null, 0);
+                    else chat(inputArray[1], Integer.valueOf(inputArray[2]));
+                } else {
+                    listener.serverMessage(input);
+                }
+            }
+        }
+
+        private void readFrames() throws IOException {
+            FrameReader frames = new FrameReader();
+            while (frames.read(input)) {
+                switch (frames.opcode()) {
+                    case Wire.PING:
+                        tcpMessages.add(".pong");
+                        break;
+                    case Wire.USERINFO:
+                        userInfo(frames.getString(), frames.getString());
+                        break;
+                    case Wire.CHAT:
+                        chat(frames.getString(), frames.getVarInt());
+                        break;
+                    case Wire.CHAT_OFF:
+                        chat(null, 0);
+                        break;
+                    case Wire.TEXT:
+                        for (String line : frames.getString().split("\n")) //o listener recebe uma linha de cada vez
+                            listener.serverMessage(line);
+                        break;
+                    default:
+                        break; //opcode de uma versão mais recente
+                }
+            }
         }
     }
 
@@ -118,27 +240,75 @@ public class TCPHandlerThread extends Thread {
      * WriterThread is a private inner class that extends the Thread class.
      * It is responsible for sending messages from the tcpMessages queue to the client socket's output stream.
      * 
-     * <p>It continuously checks if there are any messages in the tcpMessages queue, and if so, 
-     * it removes the first message from the arraylist and sends it to the client socket.</p>
+     * <p>It parks on the tcpMessages queue until a message is queued, then drains every
+     * message that is already waiting (up to MAX_BATCH) and sends them with a single flush.
+     * The thread exits when it is interrupted.</p>
      * 
-     * <p>This class uses a PrintWriter to write messages to the client socket's output stream.</p>
+     * <p>This class uses a PrintWriter to write messages to the client socket's output stream.
+     * In the binary protocol it encodes every message into a frame instead: the first one,
+     * the temporary name, as OPEN, and every command line as the command's opcode with its
+     * arguments split on spaces, like the server splits text lines, except for .notify,
+     * whose whole message is one field. Lines without an opcode are sent as LINE.</p>
      * 
      * @throws IOException if an I/O error occurs when creating the PrintWriter.
      */
     private class WriterThread extends Thread {
         private PrintWriter out;
+        private OutputStream output;
+        private FrameWriter frames;
+        private boolean opened;
 
         public WriterThread() throws IOException {
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
+            if (binary) {
+                output = new BufferedOutputStream(clientSocket.getOutputStream());
+                frames = new FrameWriter();
+            } else {
+                out = new PrintWriter(clientSocket.getOutputStream(), false);
+            }
         }
 
         @Override
         public void run() {
+            List<String> batch = new ArrayList<>(MAX_BATCH);
             while (true) {
-                if (!tcpMessages.isEmpty()) {
-                    out.println(tcpMessages.remove(0));
+                try {
+                    batch.add(tcpMessages.take());
+                } catch (InterruptedException e) {
+                    return;
                 }
+                tcpMessages.drainTo(batch, MAX_BATCH - 1);
+                if (binary) {
+                    try {
+                        for (String message : batch)
+                            encode(message).writeTo(output);
+                        output.flush();
+                    } catch (IOException ignored) {} //a ligação caiu, o reader termina a sessão
+                } else {
+                    for (String message : batch)
+                        out.println(message);
+                    out.flush();
+                }
+                batch.clear();
+            }
+        }
+
+        private FrameWriter encode(String message) {
+            if (!opened) {
+                opened = true;
+                return frames.begin(Wire.OPEN).putString(message).end();
+            }
+            int space = message.indexOf(' ');
+            int opcode = Wire.opcode(space < 0 ? message : message.substring(0, space));
+            if (opcode < 0) return frames.begin(Wire.LINE).putString(message).end();
+            frames.begin(opcode);
+            String arguments = space < 0 ? "" : message.substring(space + 1);
+            if (opcode == Wire.NOTIFY) {
+                if (!arguments.isEmpty()) frames.putString(arguments);
+            } else if (!arguments.isEmpty()) {
+                for (String argument : arguments.split(" "))
+                    frames.putString(argument);
             }
+            return frames.end();
         }
     }
 }
@@ -4,8 +4,11 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
-import dev.superman.ED.SynchronizedArrayList;
+import dev.superman.ED.MpscQueue;
 import dev.superman.client.schema.User;
 
 /**
@@ -16,53 +19,67 @@ import dev.superman.client.schema.User;
  * The class provides functionality to:
  * - Initialize a multicast socket and join a multicast group.
  * - Start the reader and writer threads.
- * - Close the UDP connection and clear the message queue.
+ * - Close the UDP connection, wait for both threads to exit and clear the message queue.
+ * 
+ * Received datagrams are passed to a {@link ClientListener}.
  * 
  */
 public class UDPHandlerThread extends Thread {
     private static int BYTES = 1024;
-    private String address;
+    private static final int MAX_BATCH = 64;
+    private static final long JOIN_TIMEOUT_MS = 1000;
+    private InetAddress group;
     private int port;
     private MulticastSocket multicastSocket;
     private ReaderThread readerThread;
     private WriterThread writerThread;
-    private SynchronizedArrayList<String> udpMessages;
+    private MpscQueue<String> udpMessages;
     private User user;
-    private boolean running;
+    private ClientListener listener;
+    private volatile boolean running;
 
     @SuppressWarnings("deprecation")
-    public UDPHandlerThread(User user, String address, int port, SynchronizedArrayList<String> udpMessages) throws IOException {
-        this.address = address;
+    public UDPHandlerThread(User user, String address, int port, MpscQueue<String> udpMessages, ClientListener listener) throws IOException {
+        this.group = InetAddress.getByName(address);
         this.port = port;
         multicastSocket = new MulticastSocket(port);
-        multicastSocket.joinGroup(InetAddress.getByName(address));
+        multicastSocket.joinGroup(group);
         this.udpMessages = udpMessages;
         readerThread = new ReaderThread();
         writerThread = new WriterThread();
         this.user = user;
+        this.listener = listener;
         running = true;
         readerThread.start();
         writerThread.start();
     }
 
     /**
-     * Closes the UDP connection by stopping the running thread, clearing the message queue,
-     * and closing the multicast socket if it is not null.
+     * Closes the UDP connection by stopping both threads, closing the multicast socket
+     * and waiting for the threads to exit. The message queue is cleared afterwards, so the
+     * UDPHandlerThread of the next room starts with an empty queue and is the only consumer.
      */
     public void closeConnection() {
         running = false;
-        udpMessages.clear();
+        writerThread.interrupt();
         if (multicastSocket != null) multicastSocket.close();
+        try {
+            writerThread.join(JOIN_TIMEOUT_MS);
+            readerThread.join(JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        udpMessages.clear();
     }
 
     /**
      * ReaderThread is a private inner class that extends the Thread class.
      * It is responsible for continuously reading data from a multicast socket
-     * and printing the received data to the console.
+     * and passing the received text to the listener.
      * 
      * The thread runs in a loop as long as the 'running' flag is true.
-     * It creates a buffer to store the incoming data and a DatagramPacket
-     * to receive the data from the multicast socket.
+     * It reuses one buffer and DatagramPacket for every datagram and decodes
+     * only the bytes that were received.
      * 
      * If an IOException occurs during the receive operation, the exception
      * is caught and the loop continues to attempt to receive data.
@@ -70,12 +87,13 @@ public class UDPHandlerThread extends Thread {
     private class ReaderThread extends Thread {
         @Override
         public void run() {
+            byte[] buffer = new byte[BYTES];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
             while (running) {
                 try {
-                    byte[] buffer = new byte[BYTES];
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    packet.setLength(buffer.length);
                     multicastSocket.receive(packet);
-                    System.out.println(new String(packet.getData()));
+                    listener.chatMessage(new String(buffer, 0, packet.getLength(), StandardCharsets.UTF_8));
                 } catch (IOException e) {
                     continue;
                 }
@@ -88,10 +106,9 @@ public class UDPHandlerThread extends Thread {
      * sending UDP messages from the udpMessages queue to a specified multicast address
      * and port. The messages are prefixed with the user's name.
      * 
-     * The run method continuously checks if the thread is running and if there are any
-     * messages in the udpMessages queue. If there are messages, it constructs a message
-     * by combining the user's name and the message, converts it to a byte array, and
-     * sends it as a DatagramPacket to the specified multicast address and port.
+     * The run method parks on the udpMessages queue until a message is queued, then drains
+     * up to MAX_BATCH waiting messages and sends each one as a datagram, reusing the same
+     * DatagramPacket. It exits when closeConnection() interrupts it.
      * 
      * If an IOException occurs while sending the packet, the exception is caught and
      * the loop continues.
@@ -99,18 +116,25 @@ public class UDPHandlerThread extends Thread {
     private class WriterThread extends Thread {
         @Override
         public void run() {
+            List<String> batch = new ArrayList<>(MAX_BATCH);
+            DatagramPacket packet = new DatagramPacket(new byte[0], 0, group, port);
             while (running) {
-                if (!udpMessages.isEmpty()) {
-                    String message = user.getName() + ": " + udpMessages.remove(0);
-                    byte[] buffer = message.getBytes();
-                    DatagramPacket packet = null;
+                try {
+                    batch.add(udpMessages.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                udpMessages.drainTo(batch, MAX_BATCH - 1);
+                for (String text : batch) {
+                    byte[] buffer = (user.getName() + ": " + text).getBytes(StandardCharsets.UTF_8);
+                    packet.setData(buffer, 0, buffer.length);
                     try {
-                        packet = new DatagramPacket(buffer, buffer.length, InetAddress.getByName(address), port);
                         multicastSocket.send(packet);
                     } catch (IOException e) {
                         continue;
                     }
                 }
+                batch.clear();
             }
         }
     }
@@ -0,0 +1,142 @@
+package dev.superman.client.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import dev.superman.server.metrics.Histogram;
+import dev.superman.server.metrics.Metrics;
+import dev.superman.server.protocols.UserRegistry;
+
+/**
+ * LoadGenerator simulates many client sessions against a server on the same machine,
+ * using the client's own TCPHandlerThread and UDPHandlerThread without the console.
+ *
+ * <p>Every simulated {@link Operator} registers, logs in, joins the room of its access
+ * level, chats over multicast at a fixed rate and sends commands and resource alerts at
+ * random intervals. At the end the generator prints the throughput and the p50, p99 and
+ * p999 latency of every command round trip, of multicast delivery and of alerts from
+ * request to acceptance. Operator names, start times and schedules come from a seed, so
+ * two runs with the same options send the same traffic.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java -cp &lt;classpath&gt; dev.superman.client.load.LoadGenerator              run the load
+ * java -cp &lt;classpath&gt; dev.superman.client.load.LoadGenerator seed db/users.txt
+ * </pre>
+ * <p>Registered users are CONVIDADO, who can raise resource alerts but not accept them.
+ * {@code seed}, run before the server starts, adds three of every four operators to the
+ * user file as BAIXO, MEDIO and ALTO, so that runs also exercise joins to the other rooms
+ * and alert accepts.</p>
+ *
+ * <p>Configuration (system properties):</p>
+ * <ul>
+ *   <li>superman.client.host, superman.client.port: the server (default 127.0.0.1:7)</li>
+ *   <li>superman.client.protocol: text (default) or binary, the TCP protocol of the operators</li>
+ *   <li>superman.load.operators: number of simulated operators (default 100)</li>
+ *   <li>superman.load.prefix, superman.load.password: operator names are the prefix followed by a number (default load-, load)</li>
+ *   <li>superman.load.rampUpMs: operators connect evenly over this time (default 10000)</li>
+ *   <li>superman.load.durationMs: length of the run after the ramp up (default 60000)</li>
+ *   <li>superman.load.chatRate: chat messages per second per operator (default 1)</li>
+ *   <li>superman.load.commandRate: .online, .profile or .history commands per second per operator (default 0.2)</li>
+ *   <li>superman.load.alertRate: resource alerts per second per CONVIDADO operator (default 0.02)</li>
+ *   <li>superman.load.acceptChance: chance that an operator who can accept an announced alert tries to (default 0.1)</li>
+ *   <li>superman.load.reportMs: how often progress is printed (default 10000, 0 disables it)</li>
+ *   <li>superman.load.seed: seed of the schedules (default 1)</li>
+ * </ul>
+ */
+public class LoadGenerator {
+    static final String HOST = System.getProperty("superman.client.host", "127.0.0.1");
+    static final int PORT = Integer.getInteger("superman.client.port", 7);
+    static final int OPERATORS = Integer.getInteger("superman.load.operators", 100);
+    static final String PREFIX = System.getProperty("superman.load.prefix", "load-");
+    static final String PASSWORD = System.getProperty("superman.load.password", "load");
+    static final long RAMP_UP_MS = Long.getLong("superman.load.rampUpMs", 10000);
+    static final long DURATION_MS = Long.getLong("superman.load.durationMs", 60000);
+    static final double CHAT_RATE = Double.parseDouble(System.getProperty("superman.load.chatRate", "1"));
+    static final double COMMAND_RATE = Double.parseDouble(System.getProperty("superman.load.commandRate", "0.2"));
+    static final double ALERT_RATE = Double.parseDouble(System.getProperty("superman.load.alertRate", "0.02"));
+    static final double ACCEPT_CHANCE = Double.parseDouble(System.getProperty("superman.load.acceptChance", "0.1"));
+    static final long REPORT_MS = Long.getLong("superman.load.reportMs", 10000);
+    static final long SEED = Long.getLong("superman.load.seed", 1);
+    private static final String[] SEED_LEVELS = {"BAIXO", "MEDIO", "ALTO"};
+    private static final String[] LATENCIES = {"rtt.register", "rtt.login", "rtt.profile", "rtt.join", "rtt.online",
+            "rtt.history", "rtt.request", "rtt.accept", "delivery", "alert"};
+    private static final String[] COUNTERS = {"sessions.connected", "sessions.ready", "sessions.lost", "connect.failed",
+            "register.busy", "login.busy", "login.failed", "timeouts", "chat.sent", "chat.received", "chat.late",
+            "alerts.requested", "alerts.expired", "accept.won", "accept.lost"};
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 2 && args[0].equals("seed")) {
+            seed(Paths.get(args[1]));
+            return;
+        }
+        if (args.length != 0) {
+            System.out.println("Usage: LoadGenerator [seed <users file>]");
+            return;
+        }
+        System.out.printf(Locale.ROOT, "Load: %d operators on %s:%d, ramp up %dms, duration %dms, chat %.2f/s, commands %.2f/s, alerts %.3f/s, accept chance %.2f, seed %d%n",
+                OPERATORS, HOST, PORT, RAMP_UP_MS, DURATION_MS, CHAT_RATE, COMMAND_RATE, ALERT_RATE, ACCEPT_CHANCE, SEED);
+        Metrics metrics = new Metrics();
+        CountDownLatch done = new CountDownLatch(OPERATORS);
+        long start = System.nanoTime();
+        long endAt = start + TimeUnit.MILLISECONDS.toNanos(RAMP_UP_MS + DURATION_MS);
+        for (int i = 0; i < OPERATORS; i++) {
+            long startAt = start + TimeUnit.MILLISECONDS.toNanos(RAMP_UP_MS) * i / OPERATORS;
+            Operator operator = new Operator(PREFIX + i, SEED * 1_000_003L + i, metrics, startAt, endAt, done);
+            Thread.ofVirtual().name("operator-" + i).start(operator);
+        }
+        while (!done.await(REPORT_MS > 0 ? REPORT_MS : Long.MAX_VALUE, TimeUnit.MILLISECONDS))
+            System.out.printf(Locale.ROOT, "%6.1fs ready=%d chat sent=%d received=%d timeouts=%d%n", (System.nanoTime() - start) / 1e9,
+                    metrics.counter("sessions.ready").sum(), metrics.counter("chat.sent").sum(),
+                    metrics.counter("chat.received").sum(), metrics.counter("timeouts").sum());
+        report(metrics, (System.nanoTime() - start) / 1e9);
+        System.exit(0); //as threads das sessões não são daemon
+    }
+
+    /**
+     * Adds the operators that are not CONVIDADO to a user file. Existing users are kept.
+     * Hashes use superman.bcrypt.cost, like the server.
+     */
+    private static void seed(Path userFile) throws IOException {
+        int cost = Integer.getInteger("superman.bcrypt.cost", 10);
+        if (userFile.toAbsolutePath().getParent() != null) Files.createDirectories(userFile.toAbsolutePath().getParent());
+        UserRegistry registry = new UserRegistry(userFile.toString());
+        int added = 0;
+        for (int i = 0; i < OPERATORS; i++) {
+            if (i % 4 == 0) continue; //um em cada quatro fica CONVIDADO e regista-se durante a carga
+            String name = PREFIX + i;
+            if (!registry.exists(name) && registry.register(name, BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost)), SEED_LEVELS[i % 4 - 1])) added++;
+        }
+        System.out.println("Added " + added + " operators to " + userFile);
+    }
+
+    private static void report(Metrics metrics, double seconds) {
+        long commands = 0;
+        System.out.println("--------- Latency -----------");
+        System.out.printf(Locale.ROOT, "%-14s %9s %9s %10s %10s %10s %10s%n", "name", "count", "rate/s", "p50", "p99", "p999", "max");
+        for (String name : LATENCIES) {
+            Histogram histogram = metrics.histogram(name);
+            if (histogram.getCount() == 0) continue;
+            if (name.startsWith("rtt.")) commands += histogram.getCount();
+            System.out.printf(Locale.ROOT, "%-14s %9d %9.1f %10s %10s %10s %10s%n", name, histogram.getCount(), histogram.getCount() / seconds,
+                    millis(histogram.getPercentile(0.5)), millis(histogram.getPercentile(0.99)),
+                    millis(histogram.getPercentile(0.999)), millis(histogram.getMax()));
+        }
+        System.out.println("--------- Totals -----------");
+        for (String name : COUNTERS)
+            System.out.println(name + " " + metrics.counter(name).sum());
+        System.out.printf(Locale.ROOT, "Throughput over %.1fs: %.1f commands/s, %.1f chat messages sent/s, %.1f delivered/s%n", seconds,
+                commands / seconds, metrics.counter("chat.sent").sum() / seconds, metrics.counter("chat.received").sum() / seconds);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,300 @@
+package dev.superman.client.load;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import dev.superman.ED.MpscQueue;
+import dev.superman.client.Threads.ClientListener;
+import dev.superman.client.Threads.TCPHandlerThread;
+import dev.superman.client.schema.User;
+import dev.superman.server.metrics.Metrics;
+
+/**
+ * An Operator is one simulated user of the load generator. It drives a real client
+ * session (TCPHandlerThread and UDPHandlerThread) from a script instead of the console.
+ *
+ * <p>The script registers, logs in, reads its access level with {@code .profile} and joins
+ * the room of that level. Until the end of the run it then sends chat messages to its room
+ * at a fixed rate and, at random intervals, round-trip commands and resource alerts.
+ * Operators that can accept alerts try to accept the ones they are told about, each with
+ * the configured chance, so that not every operator races for every alert.</p>
+ *
+ * <p>Only one command is in flight at a time, so the first line that answers it is its
+ * reply; lines pushed by the server meanwhile, such as alert announcements, are handled by
+ * the listener methods. Chat messages carry the time they were sent, which every other
+ * operator of the room uses to measure the multicast delivery latency. All operators run
+ * in the same JVM, so {@link System#nanoTime()} is comparable between them.</p>
+ */
+class Operator implements ClientListener, Runnable {
+    private static final String TAG = "#load";
+    private static final long REPLY_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
+    private static final int BUSY_RETRIES = 20;
+    private static final String[] REGISTER_REPLIES = {"Registration successful", "Username already exists", "Server busy", "Registration failed"};
+    private static final String[] LOGIN_REPLIES = {"Login successfull", "Login inválido", "User already logged in", "Server busy", "Invalid login"};
+    private static final String[] PROFILE_REPLIES = {"Access Level: "};
+    private static final String[] JOIN_REPLIES = {"--------- Joined", "Access denied", "You are already in room", "Failed to join"};
+    private static final String[] ONLINE_REPLIES = {"Users("};
+    private static final String[] HISTORY_REPLIES = {"--------- History", "Access denied", "Invalid history"};
+    private static final String[] REQUEST_REPLIES = {"RESOURCES request sent", "You dont have permission", "Invalid request"};
+    private static final String[] ACCEPT_REPLIES = {"Alert ended", "Request not found", "You cannout accept", "You dont have permission"};
+
+    private final String name;
+    private final Random random;
+    private final Metrics metrics;
+    private final long startAt;
+    private final long endAt;
+    private final CountDownLatch done;
+    private final LinkedBlockingQueue<String> replies;
+    private final Semaphore roomReady;
+    private final AtomicBoolean alertAnnounced;
+    private final MpscQueue<String> udpMessages;
+    private volatile Thread script;
+    private volatile boolean connected;
+    private volatile long alertRequestedAt;
+    private TCPHandlerThread session;
+    private String level;
+    private String room;
+    private long sequence;
+
+    Operator(String name, long seed, Metrics metrics, long startAt, long endAt, CountDownLatch done) {
+        this.name = name;
+        this.random = new Random(seed);
+        this.metrics = metrics;
+        this.startAt = startAt;
+        this.endAt = endAt;
+        this.done = done;
+        replies = new LinkedBlockingQueue<>();
+        roomReady = new Semaphore(0);
+        alertAnnounced = new AtomicBoolean();
+        udpMessages = new MpscQueue<>();
+    }
+
+    @Override
+    public void run() {
+        script = Thread.currentThread();
+        try {
+            long delay = startAt - System.nanoTime();
+            if (delay > 0) Thread.sleep(TimeUnit.NANOSECONDS.toMillis(delay));
+            try {
+                session = new TCPHandlerThread(new User(), udpMessages, LoadGenerator.HOST, LoadGenerator.PORT, this);
+            } catch (IOException e) {
+                metrics.counter("connect.failed").increment();
+                return;
+            }
+            connected = true;
+            metrics.counter("sessions.connected").increment();
+            if (setUp()) {
+                metrics.counter("sessions.ready").increment();
+                steadyState();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (session != null) session.closeConnection();
+            done.countDown();
+        }
+    }
+
+    /**
+     * Registers, logs in, reads the access level and joins the level's room.
+     *
+     * @return true if the operator is logged in and listening to its room
+     */
+    private boolean setUp() throws InterruptedException {
+        String reply = retryBusy("register", ".register " + name + " " + LoadGenerator.PASSWORD, REGISTER_REPLIES);
+        if (reply == null || reply.startsWith("Server busy") || reply.startsWith("Registration failed")) return false;
+        roomReady.drainPermits();
+        reply = retryBusy("login", ".login " + name + " " + LoadGenerator.PASSWORD, LOGIN_REPLIES);
+        if (reply == null || !reply.startsWith("Login successfull")) {
+            metrics.counter("login.failed").increment();
+            return false;
+        }
+        if (!roomReady.tryAcquire(REPLY_TIMEOUT_NS, TimeUnit.NANOSECONDS)) return false;
+        room = "CONVIDADO"; //o login entra sempre na sala CONVIDADO
+        reply = command("profile", ".profile", PROFILE_REPLIES);
+        if (reply == null) return false;
+        level = reply.substring(PROFILE_REPLIES[0].length()).trim();
+        if (!level.equals(room)) {
+            roomReady.drainPermits();
+            reply = command("join", ".join " + level.toLowerCase(), JOIN_REPLIES);
+            if (reply != null && reply.startsWith("--------- Joined")) {
+                if (!roomReady.tryAcquire(REPLY_TIMEOUT_NS, TimeUnit.NANOSECONDS)) return false;
+                room = level;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends chat messages, commands and alerts on their schedules until the end of the run.
+     * Operators at CONVIDADO raise resource alerts, the others accept them: a CONVIDADO user
+     * is told over TCP, and only then, when its own alert ends, which gives the alert latency.
+     */
+    private void steadyState() throws InterruptedException {
+        boolean raisesAlerts = level.equals("CONVIDADO");
+        long now = System.nanoTime();
+        long chatInterval = interval(LoadGenerator.CHAT_RATE);
+        long nextChat = chatInterval == Long.MAX_VALUE ? Long.MAX_VALUE : now + (long) (random.nextDouble() * chatInterval);
+        long nextCommand = next(now, LoadGenerator.COMMAND_RATE);
+        long nextAlert = raisesAlerts ? next(now, LoadGenerator.ALERT_RATE) : Long.MAX_VALUE;
+        while (connected && (now = System.nanoTime()) < endAt) {
+            if (!raisesAlerts && alertAnnounced.getAndSet(false) && random.nextDouble() < LoadGenerator.ACCEPT_CHANCE) accept();
+            if (now >= nextChat) {
+                chat(now);
+                nextChat += chatInterval;
+                if (nextChat < now) { //atrasado, não tenta recuperar as mensagens perdidas
+                    metrics.counter("chat.late").increment();
+                    nextChat = now + chatInterval;
+                }
+            }
+            if (now >= nextCommand) {
+                switch (random.nextInt(3)) {
+                    case 0 -> command("online", ".online", ONLINE_REPLIES);
+                    case 1 -> command("profile", ".profile", PROFILE_REPLIES);
+                    default -> command("history", ".history " + room.toLowerCase() + " 5", HISTORY_REPLIES);
+                }
+                nextCommand = next(System.nanoTime(), LoadGenerator.COMMAND_RATE);
+            }
+            if (now >= nextAlert) {
+                if (alertRequestedAt == 0) requestAlert();
+                nextAlert = next(System.nanoTime(), LoadGenerator.ALERT_RATE);
+            }
+            long wake = Math.min(Math.min(nextChat, nextCommand), Math.min(nextAlert, endAt));
+            LockSupport.parkNanos(wake - System.nanoTime()); //acordado mais cedo por um alerta anunciado
+        }
+    }
+
+    private void chat(long now) {
+        udpMessages.add(TAG + " " + name + " " + sequence++ + " " + now);
+        metrics.counter("chat.sent").increment();
+    }
+
+    private void requestAlert() throws InterruptedException {
+        long requestedAt = System.nanoTime();
+        alertRequestedAt = requestedAt;
+        String reply = command("request", ".request res", REQUEST_REPLIES);
+        if (reply != null && reply.startsWith("RESOURCES request sent")) metrics.counter("alerts.requested").increment();
+        else if (alertRequestedAt == requestedAt) alertRequestedAt = 0;
+    }
+
+    private void accept() throws InterruptedException {
+        String reply = command("accept", ".accept res", ACCEPT_REPLIES);
+        if (reply == null) return;
+        if (reply.equals("Alert ended")) metrics.counter("accept.won").increment();
+        else metrics.counter("accept.lost").increment();
+    }
+
+    /**
+     * Sends a command and retries it with a growing, jittered pause while the server
+     * answers that it is busy, as happens to logins beyond its admission limits.
+     */
+    private String retryBusy(String command, String line, String[] replyPrefixes) throws InterruptedException {
+        String reply = null;
+        for (int attempt = 0; attempt < BUSY_RETRIES; attempt++) {
+            reply = command(command, line, replyPrefixes);
+            if (reply == null || !reply.startsWith("Server busy")) return reply;
+            metrics.counter(command + ".busy").increment();
+            Thread.sleep((10L << Math.min(attempt, 6)) + random.nextInt(50));
+        }
+        return reply;
+    }
+
+    /**
+     * Sends a command and waits for the first line that starts with one of its replies.
+     * The round-trip time is recorded in the histogram {@code rtt.<command>}.
+     *
+     * @return the reply, or null if none came in time
+     */
+    private String command(String command, String line, String[] replyPrefixes) throws InterruptedException {
+        replies.clear();
+        long start = System.nanoTime();
+        session.getTcpMessages().add(line);
+        long deadline = start + REPLY_TIMEOUT_NS;
+        while (connected) {
+            String reply = replies.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (reply == null) break;
+            for (String prefix : replyPrefixes) {
+                if (reply.startsWith(prefix)) {
+                    metrics.histogram("rtt." + command).record(System.nanoTime() - start);
+                    return reply;
+                }
+            }
+        }
+        metrics.counter("timeouts").increment();
+        return null;
+    }
+
+    @Override
+    public void serverMessage(String message) {
+        if (!handleAlert(message)) replies.add(message);
+    }
+
+    @Override
+    public void chatMessage(String message) {
+        int tag = message.indexOf(": " + TAG + " ");
+        if (tag < 0) {
+            handleAlert(message);
+            return;
+        }
+        String[] parts = message.substring(tag + 2).split(" "); //#load <remetente> <sequência> <nanoTime>
+        if (parts.length != 4 || parts[1].equals(name)) return;
+        try {
+            metrics.histogram("delivery").record(System.nanoTime() - Long.parseLong(parts[3]));
+            metrics.counter("chat.received").increment();
+        } catch (NumberFormatException ignored) {}
+    }
+
+    @Override
+    public void roomJoined(String address, int port) {
+        roomReady.release();
+    }
+
+    @Override
+    public void disconnected() {
+        if (connected && System.nanoTime() < endAt) metrics.counter("sessions.lost").increment();
+        connected = false;
+        Thread waiting = script;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    /**
+     * Handles the alert messages of the server: announcements wake an operator that can
+     * accept them, and the end of the operator's own alert records its latency.
+     *
+     * @return true if the message was an alert message
+     */
+    private boolean handleAlert(String message) {
+        if (!message.startsWith("[System]: ")) return false;
+        long requestedAt = alertRequestedAt;
+        if (message.contains(" request accepted by ") || message.contains(" expired without being accepted")) {
+            if (requestedAt != 0) {
+                alertRequestedAt = 0;
+                if (message.contains(" expired ")) metrics.counter("alerts.expired").increment();
+                else metrics.histogram("alert").record(System.nanoTime() - requestedAt);
+            }
+        } else if (message.contains(" requested by ") && !message.contains(" requested by " + name + " ")) {
+            alertAnnounced.set(true);
+            Thread waiting = script;
+            if (waiting != null) LockSupport.unpark(waiting);
+        }
+        return true;
+    }
+
+    private static long interval(double ratePerSecond) {
+        return ratePerSecond > 0 ? (long) (1e9 / ratePerSecond) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Picks the time of the next event of a Poisson process with the given rate.
+     */
+    private long next(long now, double ratePerSecond) {
+        if (ratePerSecond <= 0) return Long.MAX_VALUE;
+        return now + (long) (-Math.log(1 - random.nextDouble()) / ratePerSecond * 1e9);
+    }
+}
@@ -8,7 +8,7 @@ public class User {
     private String name;
 
     public User() {
-        setTemporaryName(GUEST_NAME + new Random().nextInt(1000));
+        temporaryName = GUEST_NAME + new Random().nextInt(1000);
     }
 
     public String getTemporaryName() {
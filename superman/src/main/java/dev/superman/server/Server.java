@@ -1,8 +1,22 @@
 package dev.superman.server;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import dev.superman.ED.SynchronizedArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dev.superman.ED.SnapshotSet;
+import dev.superman.server.jfr.BroadcastEvent;
 import dev.superman.server.loggerThread.LoggerThread;
+import dev.superman.server.metrics.Metrics;
 import dev.superman.server.protocols.InputHandler;
 import dev.superman.server.protocols.Requests;
 import dev.superman.server.tcp.TCPHandler;
@@ -10,110 +24,402 @@ import dev.superman.server.udp.UDPConnection;
 
 
 /** 
- * The Server class contains the following inner class:
+ * The Server class contains the following inner classes:
+ * - Builder: Configures the ports, the multicast groups and the data directory of a server.
  * - PeriodicReport: A thread that generates periodic reports about the server's
  *   current state, including the number of connected users, a list of users,
  *   and the number of requests being processed. The report is broadcasted to
  *   all connected UDP clients.
+ * - MetricsSnapshot: A thread that writes the metrics registry to metrics.txt in the data
+ *   directory every superman.metrics.snapshotMs milliseconds (default 60000, 0 disables it).
  * 
- * Usage:
- * To start the server, simply create an instance of the Server class by calling
- * the main method.
+ * Every server keeps its state in its own instance, so several servers can run in one
+ * process, for example in benchmarks, as long as they use different ports and data
+ * directories. Port 0 picks a free ephemeral port; the ports actually bound are read with
+ * {@link #getTcpPort()} and {@link #getGroups()} once the server is started.
  * 
- * Example:
- * public static void main(String[] args) {
- *     new Server();
- * }
+ * Usage:
+ * <pre>
+ * Server server = Server.builder()
+ *     .tcpPort(0)
+ *     .groupPort(0)
+ *     .dataDirectory(Paths.get("target/server-1"))
+ *     .build()
+ *     .start();
+ * ...
+ * server.stop();
+ * </pre>
+ * The main method starts a server with the defaults, which are read from the
+ * superman.tcp.port (7), superman.udp.group (230.0.0.1), superman.udp.port (5000) and
+ * superman.data (db) system properties.
  */
 public class Server {
+    private static final long METRICS_SNAPSHOT_MS = Long.getLong("superman.metrics.snapshotMs", 60000);
+    private static final int TCP_PORT = Integer.getInteger("superman.tcp.port", 7);
+    private static final String GROUP_ADDRESS = System.getProperty("superman.udp.group", "230.0.0.1");
+    private static final int GROUP_PORT = Integer.getInteger("superman.udp.port", 5000);
+    private static final String DATA_DIRECTORY = System.getProperty("superman.data", "db");
+    private static final String[] ROOMS = {"CONVIDADO", "BAIXO", "MEDIO", "ALTO"};
+    private final int tcpPort;
+    private final String groupAddress;
+    private final int groupPort;
+    private final Path dataDirectory;
+    private final ReentrantLock lifecycleLock;
+    private boolean started;
+    private boolean stopped;
     private InputHandler inputHandler;
-    private SynchronizedArrayList<UDPConnection> udpConnections;
+    private SnapshotSet<UDPConnection> udpConnections;
+    private Map<String, String> groups;
     private Requests requests;
     private TCPHandler tcpHandler;
     private LoggerThread logger;
+    private Thread periodicReport;
+    private Thread metricsSnapshot;
+
+    private Server(Builder builder) {
+        tcpPort = builder.tcpPort;
+        groupAddress = builder.groupAddress;
+        groupPort = builder.groupPort;
+        dataDirectory = builder.dataDirectory;
+        lifecycleLock = new ReentrantLock();
+        udpConnections = new SnapshotSet<>();
+        groups = Collections.emptyMap();
+    }
 
     /**
-     * The Server class initializes and manages the server components including
-     * request handling, input handling, UDP connections, logging, TCP handling,
-     * and periodic reporting.
+     * Creates a builder with the default configuration.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts the server components including request handling, input handling, UDP
+     * connections, logging, TCP handling, and periodic reporting.
      * 
-     * <p>This constructor performs the following actions:
+     * <p>This method performs the following actions:
      * <ul>
+     *   <li>Creates the data directory and starts a logger thread that writes to Logs/log in it.</li>
      *   <li>Initializes the Requests and InputHandler with the current server instance.</li>
-     *   <li>Creates a synchronized list of UDP connections and starts a logger thread.</li>
-     *   <li>Adds predefined UDP connections ("CONVIDADO", "BAIXO", "MEDIO", "ALTO") to the list and starts them.</li>
+     *   <li>Creates a UDP connection for every room ("CONVIDADO", "BAIXO", "MEDIO", "ALTO") on the group
+     *       address, on consecutive ports from the group port, or on ephemeral ports if it is 0; each one
+     *       starts its own reader and writer.</li>
      *   <li>Initializes and starts the TCPHandler for handling TCP connections.</li>
-     *   <li>Starts a periodic report thread for regular reporting.</li>
+     *   <li>Registers the gauges of the metrics registry.</li>
+     *   <li>Starts a periodic report thread for regular reporting and one that writes metrics snapshots.</li>
      * </ul>
+     * If a socket cannot be bound, whatever was started is stopped again.
+     *
+     * @return this server
+     * @throws IOException if the data directory cannot be created or a socket cannot be bound
+     * @throws IllegalStateException if the server was already started
      */
-    public Server() {
-        requests = new Requests(this);
-        inputHandler = new InputHandler(requests, this);
-        udpConnections = new SynchronizedArrayList<>();
-        logger = new LoggerThread();
-        logger.start();
-
-        udpConnections.add(new UDPConnection("CONVIDADO", inputHandler, logger));
-        udpConnections.add(new UDPConnection("BAIXO", inputHandler, logger));
-        udpConnections.add(new UDPConnection("MEDIO", inputHandler, logger));
-        udpConnections.add(new UDPConnection("ALTO", inputHandler, logger));
+    public Server start() throws IOException {
+        lifecycleLock.lock();
+        try {
+            if (started) throw new IllegalStateException("Server already started");
+            started = true;
+            try {
+                Files.createDirectories(dataDirectory);
+                logger = new LoggerThread(dataDirectory.resolve("Logs").resolve("log"));
+                logger.start();
+                if (ServerThreads.isVirtual()) logger.info("Server running in virtual-thread mode");
+                requests = new Requests(this);
+                inputHandler = new InputHandler(requests, this, dataDirectory, logger);
 
-        Iterator<UDPConnection> udpConnectionsIterator = udpConnections.iterator();
-        while (udpConnectionsIterator.hasNext())
-            udpConnectionsIterator.next().start();
-        tcpHandler = new TCPHandler(inputHandler, logger);
-        tcpHandler.start();
-        PeriodicReport periodicReport = new PeriodicReport();
-        periodicReport.start();
+                InetAddress group = InetAddress.getByName(groupAddress);
+                Map<String, String> roomGroups = new LinkedHashMap<>();
+                for (int i = 0; i < ROOMS.length; i++) {
+                    UDPConnection udpConnection = new UDPConnection(ROOMS[i], group, groupPort == 0 ? 0 : groupPort + i, inputHandler, logger);
+                    udpConnections.add(udpConnection);
+                    roomGroups.put(udpConnection.getUdpName(), udpConnection.getGroupInfo());
+                }
+                groups = Collections.unmodifiableMap(roomGroups);
+
+                tcpHandler = new TCPHandler(inputHandler, logger, tcpPort);
+                tcpHandler.start();
+            } catch (IOException | RuntimeException e) {
+                shutdown();
+                throw e;
+            }
+            registerGauges(inputHandler.getMetrics());
+            periodicReport = ServerThreads.start("periodic-report", new PeriodicReport());
+            if (METRICS_SNAPSHOT_MS > 0) metricsSnapshot = ServerThreads.start("metrics-snapshot", new MetricsSnapshot());
+            return this;
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the server: closes the TCP and UDP sockets and every connection, stops the
+     * background threads and the alert timer, writes the queued chat messages and a last
+     * metrics snapshot, and finally stops the logger once it has written every event.
+     * Does nothing if the server is not running. A stopped server cannot be started again.
+     */
+    public void stop() {
+        lifecycleLock.lock();
+        try {
+            if (!started || stopped) return;
+            stopped = true;
+            shutdown();
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * Stops every component that was started, in the reverse order of start().
+     */
+    private void shutdown() {
+        if (periodicReport != null) periodicReport.interrupt();
+        if (metricsSnapshot != null) metricsSnapshot.interrupt();
+        if (tcpHandler != null) tcpHandler.close();
+        for (UDPConnection udpConnection : udpConnections)
+            udpConnection.close();
+        if (requests != null) requests.close();
+        if (inputHandler != null) {
+            inputHandler.close();
+            if (METRICS_SNAPSHOT_MS > 0) {
+                try {
+                    inputHandler.getMetrics().writeSnapshot(dataDirectory.resolve("metrics.txt"));
+                } catch (IOException e) {
+                    logger.warning("Failed writing metrics snapshot: " + e.getMessage());
+                }
+            }
+        }
+        if (logger != null) {
+            logger.info("Server stopped");
+            logger.stop();
+        }
+    }
+
+    /**
+     * Registers the gauges read from the server's components: sessions, pending alerts,
+     * dropped log events and the outbound queue and inbound ring of every multicast group.
+     *
+     * @param metrics the metrics registry
+     */
+    private void registerGauges(Metrics metrics) {
+        metrics.gauge("tcp.connections", tcpHandler::getConnectionsSize);
+        metrics.gauge("tcp.users", tcpHandler::getUsersSize);
+        metrics.gauge("alerts.pending", requests::getPendingCount);
+        metrics.gauge("log.dropped", logger::getDroppedCount);
+        for (UDPConnection udpConnection : udpConnections) {
+            metrics.gauge("udp.queue." + udpConnection.getUdpName(), udpConnection::getQueueDepth);
+            metrics.gauge("udp.backlog." + udpConnection.getUdpName(), udpConnection::getBacklog);
+        }
     }
 
     public static void main(String[] args) {
-        new Server();
+        try {
+            Server server = Server.builder().build().start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "shutdown")); //escreve o log e os chats pendentes ao sair
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
     }
 
     /**
-     * Broadcasts a message to all connected UDP clients.
+     * Broadcasts a message to all connected UDP clients. Records a BroadcastEvent when
+     * a JFR recording enables it.
      *
      * @param message The message to be broadcasted to all clients.
      */
     public void serverBroadcast(String message) {
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        int groups = 0;
         Iterator<UDPConnection> udpConnectionsIterator = udpConnections.iterator();
         while (udpConnectionsIterator.hasNext()){
-                udpConnectionsIterator.next().getUdpMessages().add(message);
+                udpConnectionsIterator.next().send(message);
+                groups++;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.groups = groups;
+            event.bytes = message.getBytes(StandardCharsets.UTF_8).length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Broadcasts a message to the UDP clients of some chat rooms only.
+     *
+     * @param message The message to be broadcasted.
+     * @param rooms The names of the rooms that receive the message.
+     */
+    public void roomBroadcast(String message, Collection<String> rooms) {
+        for (UDPConnection udpConnection : udpConnections) {
+            if (rooms.contains(udpConnection.getUdpName())) udpConnection.send(message);
         }
     }
 
     /**
-     * The PeriodicReport class extends the Thread class and is responsible for generating
+     * Retrieves the port the server accepts TCP connections on.
+     *
+     * @return the bound TCP port, or the configured one before the server is started
+     */
+    public int getTcpPort() {
+        return tcpHandler != null ? tcpHandler.getPort() : tcpPort;
+    }
+
+    /**
+     * Retrieves the multicast group of every room, as sent to the clients that join it.
+     *
+     * @return a map from room name to the group's ip:port, empty before the server is started
+     */
+    public Map<String, String> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Retrieves the directory holding the server's users, chat logs, log and metrics.
+     *
+     * @return the data directory
+     */
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * Retrieves the TCPHandler of the server.
+     *
+     * @return the TCPHandler, or null while the server is starting
+     */
+    public TCPHandler getTcpHandler() {
+        return tcpHandler;
+    }
+
+    /**
+     * The PeriodicReport class implements Runnable and is responsible for generating
      * periodic reports about the server's current state. It runs indefinitely in a loop,
      * sleeping for 60 seconds between each report generation.
      * 
      * The report includes:
-     * - The number of users connected to the server.
+     * - The number of open connections and of users logged in to the server.
      * - A list of users.
      * - The number of requests currently being processed.
      * 
      * The generated report is then broadcasted to the server.
      * 
-     * If an exception occurs during the sleep or report generation, it is caught and
-     * the stack trace is printed.
+     * If an exception occurs during the report generation, it is caught and the stack
+     * trace is printed. The thread exits when the server stops and interrupts it.
      */
-    public class PeriodicReport extends Thread {
+    public class PeriodicReport implements Runnable {
         public void run() {
             while (true) {
             try {
                 Thread.sleep(60000); //a cada 60 segundos gera um relatório
                 String result = "Sistema: -----------Server Data Report -----------\n";
+                result += "Number of connections: " + tcpHandler.getConnectionsSize() + "\n";
                 result += "Number of users: " + tcpHandler.getUsersSize() + "\n";
                 result += "Users: "+ tcpHandler.getUsers() + "\n";
-                result += "Number of requests at the moment: " + requests.getRequests().size() + "\n";
+                result += "Number of requests at the moment: " + requests.getPendingCount() + "\n";
                 result += "-------------------------------------------------";
                 serverBroadcast(result);
                 
-        }catch (Exception e) {
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
             e.printStackTrace();
         }
         
     }}
 }
+
+    /**
+     * Builder configures a {@link Server}. Every setting defaults to the value of its
+     * system property, so a server built without changes behaves like the standalone one.
+     */
+    public static class Builder {
+        private int tcpPort = TCP_PORT;
+        private String groupAddress = GROUP_ADDRESS;
+        private int groupPort = GROUP_PORT;
+        private Path dataDirectory = Paths.get(DATA_DIRECTORY);
+
+        private Builder() {}
+
+        /**
+         * Sets the TCP port clients connect to.
+         *
+         * @param port the port, or 0 for an ephemeral port
+         * @return this builder
+         */
+        public Builder tcpPort(int port) {
+            tcpPort = checkPort(port);
+            return this;
+        }
+
+        /**
+         * Sets the multicast address shared by the rooms' groups.
+         *
+         * @param address a multicast address, such as 230.0.0.1
+         * @return this builder
+         */
+        public Builder groupAddress(String address) {
+            groupAddress = address;
+            return this;
+        }
+
+        /**
+         * Sets the port of the first room's multicast group; the other rooms use the
+         * following ports.
+         *
+         * @param port the first port, or 0 for an ephemeral port per room
+         * @return this builder
+         */
+        public Builder groupPort(int port) {
+            groupPort = checkPort(port);
+            return this;
+        }
+
+        /**
+         * Sets the directory for users, chat logs, the log and metrics snapshots.
+         *
+         * @param directory the data directory, created if it does not exist
+         * @return this builder
+         */
+        public Builder dataDirectory(Path directory) {
+            dataDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Builds a server that is not started yet.
+         *
+         * @return the server
+         */
+        public Server build() {
+            return new Server(this);
+        }
+
+        private static int checkPort(int port) {
+            if (port < 0 || port > 65535) throw new IllegalArgumentException("Invalid port " + port);
+            return port;
+        }
+    }
+
+    /**
+     * The MetricsSnapshot class writes the report of the metrics registry to
+     * metrics.txt in the data directory every METRICS_SNAPSHOT_MS milliseconds. The file is replaced
+     * atomically, so it can be read at any time.
+     */
+    public class MetricsSnapshot implements Runnable {
+        public void run() {
+            while (true) {
+                try {
+                    Thread.sleep(METRICS_SNAPSHOT_MS);
+                    inputHandler.getMetrics().writeSnapshot(dataDirectory.resolve("metrics.txt"));
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    logger.warning("Failed writing metrics snapshot: " + e.getMessage());
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package dev.superman.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ServerThreads starts the server's connection handlers and background loops.
+ *
+ * <p>By default every task runs on a platform thread, as before. When the server is
+ * started with {@code -Dsuperman.threads=virtual}, the same tasks run on virtual threads
+ * instead, so that idle connections only cost a small heap-allocated stack. The two modes
+ * can be compared on the same build by changing the switch only.</p>
+ *
+ * <p>The TCP acceptor and the NIO reactors always run on platform threads: there is only
+ * one of each per core and they never block on a single client. Tasks that block while
+ * holding a monitor, which pins a virtual thread to its carrier on Java 21, are started
+ * with {@link #startPlatform(String, Runnable)} instead.</p>
+ */
+public final class ServerThreads {
+    private static final boolean VIRTUAL = "virtual".equalsIgnoreCase(System.getProperty("superman.threads", "platform"));
+
+    private ServerThreads() {}
+
+    /**
+     * Starts a task on a new thread of the configured kind.
+     *
+     * @param name the name of the thread
+     * @param task the task to run
+     * @return the started thread
+     */
+    public static Thread start(String name, Runnable task) {
+        if (VIRTUAL) return Thread.ofVirtual().name(name).start(task);
+        return Thread.ofPlatform().name(name).start(task);
+    }
+
+    /**
+     * Starts a task on a new platform thread regardless of the configured mode.
+     *
+     * @param name the name of the thread
+     * @param task the task to run
+     * @return the started thread
+     */
+    public static Thread startPlatform(String name, Runnable task) {
+        return Thread.ofPlatform().name(name).start(task);
+    }
+
+    /**
+     * Creates a pool for short tasks handed over by threads that must not block, such as
+     * the NIO reactors. In virtual-thread mode every task gets its own virtual thread and
+     * the size is ignored; otherwise the pool has a fixed number of platform threads.
+     *
+     * @param name the prefix of the names of the pool's threads
+     * @param threads the number of platform threads
+     * @return the pool, which the caller shuts down
+     */
+    public static ExecutorService newPool(String name, int threads) {
+        if (VIRTUAL) return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        return Executors.newFixedThreadPool(threads, Thread.ofPlatform().name(name + "-", 0).factory());
+    }
+
+    /**
+     * Checks if tasks are started on virtual threads.
+     *
+     * @return true if the server runs in virtual-thread mode, false otherwise
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+}
@@ -0,0 +1,20 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by {@code Requests.removeRequest}.
+ */
+@Name("dev.superman.AlertAccept")
+@Label("Alert Accept")
+@Description("An attempt to accept a pending alert")
+public class AlertAcceptEvent extends SupermanEvent {
+    @Label("Type")
+    public String type;
+
+    @Label("Outcome")
+    @Description("The reply sent to the user")
+    public String outcome;
+}
@@ -0,0 +1,17 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by {@code Server.serverBroadcast}.
+ */
+@Name("dev.superman.Broadcast")
+@Label("Broadcast")
+@Description("A message queued to every multicast group")
+public class BroadcastEvent extends SupermanEvent {
+    @Label("Groups")
+    @Description("The number of multicast groups the message was queued to")
+    public int groups;
+}
@@ -0,0 +1,17 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by {@code InputHandler.getMessages}.
+ */
+@Name("dev.superman.HistoryRead")
+@Label("History Read")
+@Description("A page of a chat room's history read from its log")
+public class HistoryReadEvent extends SupermanEvent {
+    @Label("Messages")
+    @Description("The number of messages read")
+    public int messages;
+}
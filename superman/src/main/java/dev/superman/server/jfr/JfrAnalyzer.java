@@ -0,0 +1,89 @@
+package dev.superman.server.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import dev.superman.server.metrics.Histogram;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * JfrAnalyzer summarizes the server's events in a JDK Flight Recorder file: the count and
+ * latency percentiles of every event type, followed by the slowest operations with their
+ * room, user and size.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java -cp &lt;classpath&gt; dev.superman.server.jfr.JfrAnalyzer db/superman.jfr [top]
+ * </pre>
+ * <p>top is the number of slowest operations to list (default 10). Events from other
+ * sources in the file, such as the JDK's, are ignored.</p>
+ */
+public class JfrAnalyzer {
+    private static final String PREFIX = "dev.superman.";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: JfrAnalyzer <recording.jfr> [top]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int top = args.length == 2 ? Integer.parseInt(args[1]) : 10;
+        Map<String, Histogram> byType = new TreeMap<>();
+        PriorityQueue<RecordedEvent> slowest = new PriorityQueue<>(Comparator.comparing(RecordedEvent::getDuration));
+        try (RecordingFile recording = new RecordingFile(file)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String name = event.getEventType().getName();
+                if (!name.startsWith(PREFIX)) continue;
+                byType.computeIfAbsent(name.substring(PREFIX.length()), key -> new Histogram()).record(event.getDuration().toNanos());
+                slowest.add(event);
+                if (slowest.size() > top) slowest.poll(); //mantém só os top mais lentos
+            }
+        }
+        if (byType.isEmpty()) {
+            System.out.println("No " + PREFIX + "* events in " + file);
+            return;
+        }
+        System.out.println("--------- Events -----------");
+        System.out.printf(Locale.ROOT, "%-12s %8s %10s %10s %10s %10s%n", "type", "count", "p50", "p99", "p999", "max");
+        byType.forEach((type, histogram) -> System.out.printf(Locale.ROOT, "%-12s %8d %10s %10s %10s %10s%n", type, histogram.getCount(),
+                millis(histogram.getPercentile(0.5)), millis(histogram.getPercentile(0.99)),
+                millis(histogram.getPercentile(0.999)), millis(histogram.getMax())));
+        List<RecordedEvent> events = new ArrayList<>(slowest);
+        events.sort(Comparator.comparing((RecordedEvent event) -> event.getDuration()).reversed());
+        System.out.println("--------- Slowest " + events.size() + " -----------");
+        for (RecordedEvent event : events) {
+            System.out.printf(Locale.ROOT, "%10s %-12s room=%s user=%s bytes=%d%s at %s%n", millis(event.getDuration().toNanos()),
+                    event.getEventType().getName().substring(PREFIX.length()), field(event, "room"), field(event, "user"),
+                    event.getLong("bytes"), details(event), event.getStartTime());
+        }
+    }
+
+    /**
+     * Lists the fields an event type adds to the common ones.
+     */
+    private static String details(RecordedEvent event) {
+        StringBuilder details = new StringBuilder();
+        for (String name : new String[] {"result", "allowed", "messages", "groups", "type", "outcome"})
+            if (event.hasField(name)) details.append(' ').append(name).append('=').append(field(event, name));
+        return details.toString();
+    }
+
+    private static String field(RecordedEvent event, String name) {
+        Object value = event.getValue(name);
+        return value != null ? value.toString() : "-";
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,16 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by {@code InputHandler.joinRoom}.
+ */
+@Name("dev.superman.Join")
+@Label("Join")
+@Description("An access check for joining a chat room or reading its history")
+public class JoinEvent extends SupermanEvent {
+    @Label("Allowed")
+    public boolean allowed;
+}
@@ -0,0 +1,17 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by {@code InputHandler.verifyLogin}, including the wait for the BCrypt pool.
+ */
+@Name("dev.superman.Login")
+@Label("Login")
+@Description("A password check, from the lookup of the user to the BCrypt result")
+public class LoginEvent extends SupermanEvent {
+    @Label("Result")
+    @Description("The access level granted, FAILED or BUSY")
+    public String result;
+}
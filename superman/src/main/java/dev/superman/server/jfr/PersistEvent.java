@@ -0,0 +1,15 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by {@code InputHandler.addMessage}. With the default durability the operation
+ * only queues the message for the room's writer; in batch durability it includes the fsync.
+ */
+@Name("dev.superman.Persist")
+@Label("Persist Message")
+@Description("A chat message handed to its room's log writer")
+public class PersistEvent extends SupermanEvent {
+}
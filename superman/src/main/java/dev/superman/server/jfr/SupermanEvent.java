@@ -0,0 +1,34 @@
+package dev.superman.server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The base of the server's JDK Flight Recorder events. Every event records the chat room
+ * and the user it concerns, when there is one, and the number of bytes it handled.
+ *
+ * <p>Events are disabled unless a recording enables them, for example with the profile in
+ * {@code superman.jfc}. Callers create the event, call begin() before the operation and
+ * fill the fields only if shouldCommit() returns true, so a disabled or filtered event
+ * costs little more than two timestamps.</p>
+ */
+@Category("Superman")
+@StackTrace(false)
+public abstract class SupermanEvent extends Event {
+    @Label("Room")
+    @Description("The chat room the operation concerns")
+    public String room;
+
+    @Label("User")
+    @Description("The user the operation concerns")
+    public String user;
+
+    @Label("Bytes")
+    @Description("The number of bytes handled by the operation")
+    @DataAmount
+    public long bytes;
+}
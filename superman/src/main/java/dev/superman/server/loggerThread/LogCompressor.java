@@ -0,0 +1,119 @@
+package dev.superman.server.loggerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import dev.superman.ED.MpscQueue;
+
+/**
+ * LogCompressor gzips the log files rotated by the {@link LoggerThread} on its own thread,
+ * so that compressing never delays the logger.
+ *
+ * <p>A rotated file {@code log.<time>} is written to {@code log.<time>.gz.tmp}, renamed to
+ * {@code log.<time>.gz} and then deleted, so a crash leaves either the plain file or the
+ * complete archive. Rotated files that were not compressed before a restart are picked up
+ * when the compressor starts. After each file only the newest
+ * {@code superman.log.retention} archives are kept.</p>
+ */
+public class LogCompressor implements Runnable {
+    private static final int RETENTION = Integer.getInteger("superman.log.retention", 10);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path logFile;
+    private final MpscQueue<Path> pending;
+
+    /**
+     * Creates a compressor for the files rotated from a log file.
+     *
+     * @param logFile the active log file; rotated files are its siblings named after it
+     */
+    public LogCompressor(Path logFile) {
+        this.logFile = logFile;
+        pending = new MpscQueue<>();
+    }
+
+    /**
+     * Queues a rotated file to be compressed.
+     *
+     * @param rotated the rotated file
+     */
+    public void compress(Path rotated) {
+        pending.add(rotated);
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (Path rotated : findUncompressed()) gzip(rotated);
+            deleteOldArchives();
+            while (true) {
+                gzip(pending.take());
+                deleteOldArchives();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void gzip(Path rotated) {
+        Path archive = rotated.resolveSibling(rotated.getFileName() + ".gz");
+        Path temporary = rotated.resolveSibling(rotated.getFileName() + ".gz.tmp");
+        try {
+            try (InputStream in = Files.newInputStream(rotated);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE)) {
+                in.transferTo(out);
+            }
+            Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(rotated);
+        } catch (IOException e) {
+            System.err.println("Log compression error for " + rotated + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the rotated files left uncompressed, oldest first.
+     */
+    private List<Path> findUncompressed() {
+        List<Path> files = listRotated();
+        files.removeIf(file -> file.getFileName().toString().endsWith(".gz"));
+        return files;
+    }
+
+    private void deleteOldArchives() {
+        if (RETENTION <= 0) return;
+        List<Path> archives = listRotated();
+        archives.removeIf(file -> !file.getFileName().toString().endsWith(".gz"));
+        for (int i = 0; i < archives.size() - RETENTION; i++) {
+            try {
+                Files.deleteIfExists(archives.get(i));
+            } catch (IOException e) {
+                System.err.println("Log retention error for " + archives.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lists the rotated files and archives, oldest first. Their names sort by time.
+     */
+    private List<Path> listRotated() {
+        List<Path> files = new ArrayList<>();
+        String prefix = logFile.getFileName() + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logFile.toAbsolutePath().getParent(), prefix + "*")) {
+            for (Path file : stream)
+                if (!file.getFileName().toString().endsWith(".tmp")) files.add(file);
+        } catch (IOException e) {
+            return files;
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
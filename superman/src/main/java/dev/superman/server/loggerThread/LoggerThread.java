@@ -1,24 +1,59 @@
 package dev.superman.server.loggerThread;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.logging.FileHandler;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
+
+import dev.superman.server.ServerThreads;
 
 /**
- * LoggerThread is a custom thread that handles logging messages to a file.
- * It uses a BlockingQueue to manage log messages and ensures that log messages
- * are written to the log file in a thread-safe manner.
- * 
+ * LoggerThread is a background task that handles logging messages to a file.
+ * Callers record an event and return; the logger thread formats the events and writes
+ * them to the log file in batches.
+ *
  * <p>This class supports logging messages with different severity levels:
  * SEVERE, INFO, and WARNING. It also creates the log file if it does not exist.
- * 
+ *
+ * <p>Events are kept in a ring of preallocated slots. A caller claims the next slot with
+ * one atomic operation and stores the level, the time, the thread name and the message in
+ * it, so logging allocates nothing beyond the message itself. The logger thread takes
+ * every ready slot, appends one line per event to a buffered writer and flushes it when the
+ * ring is empty. Each line has the form:
+ * <pre>
+ * 2026-10-16T14:03:27.512 INFO [tcp-reactor-0] message
+ * </pre>
+ * Line breaks in the message are written as {@code \n}, so an event is always one line.
+ *
+ * <p>When the ring is full, {@code superman.log.overflow} decides what happens:
+ * <ul>
+ *   <li>{@code block} (default): the caller waits for a free slot; nothing is lost.</li>
+ *   <li>{@code drop}: the event is dropped.</li>
+ *   <li>{@code sample}: SEVERE events and one in every {@code superman.log.sampleRate}
+ *       other events wait for a free slot, the rest are dropped.</li>
+ * </ul>
+ * Dropped events are counted per level and the logger writes a WARNING line with the
+ * counts once it catches up.
+ *
+ * <p>The log file is rotated when it reaches {@code superman.log.maxBytes} or is older than
+ * {@code superman.log.rotateIntervalMs}: the logger thread renames it to
+ * {@code log.<yyyyMMdd-HHmmss-SSS>} between two lines and opens a new one, which takes a close,
+ * a rename and an open. Callers keep filling the ring meanwhile. The renamed file is
+ * compressed by a {@link LogCompressor} on its own thread.
+ *
  * <p>Usage:
  * <pre>
  * LoggerThread loggerThread = new LoggerThread();
@@ -27,79 +62,363 @@ import java.util.logging.SimpleFormatter;
  * loggerThread.info("This is an info message");
  * loggerThread.warning("This is a warning message");
  * </pre>
- * 
- * <p>Note: The log file is created in the "db/Logs/" directory with the name "log".
- * 
- * @see java.util.concurrent.BlockingQueue
- * @see java.util.logging.Logger
- * @see java.util.logging.Level
- * @see java.util.logging.FileHandler
- * @see java.util.logging.SimpleFormatter
+ *
+ * <p>Note: By default the log file is created in the "db/Logs/" directory with the name "log";
+ * an embedded server passes the file under its own data directory.
+ *
+ * <p>{@link #stop()} writes the events already in the ring, closes the file and stops the
+ * compressor.
  */
-public class LoggerThread extends Thread {
-    private final BlockingQueue<String> logQueue = new LinkedBlockingQueue<>();
-    private final Logger logger = Logger.getLogger(LoggerThread.class.getName());
+public class LoggerThread implements Runnable {
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("superman.log.capacity", 8192) - 1)) << 1;
+    private static final OverflowPolicy OVERFLOW = OverflowPolicy.valueOf(System.getProperty("superman.log.overflow", "block").toUpperCase());
+    private static final int SAMPLE_RATE = Math.max(1, Integer.getInteger("superman.log.sampleRate", 100));
+    private static final long MAX_BYTES = Long.getLong("superman.log.maxBytes", 64L * 1024 * 1024);
+    private static final long ROTATE_INTERVAL_MS = Long.getLong("superman.log.rotateIntervalMs", 24L * 60 * 60 * 1000);
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long STOP_TIMEOUT_MS = 5000;
+    private static final Level[] LEVELS = { Level.SEVERE, Level.WARNING, Level.INFO };
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter ROTATED_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * What a caller does when the ring is full.
+     */
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP,
+        SAMPLE
+    }
 
     private final String LOG_FILE_PATH;
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head;
+    private final AtomicReference<Thread> waiter;
+    private final LongAdder[] dropped;
+    private final AtomicLong overflows;
+    private final long[] reportedDrops;
+
+    private final LogCompressor compressor;
+    private Thread loggerThread;
+    private Thread compressorThread;
+    private volatile boolean stopping;
+    private BufferedWriter writer;
+    private long fileBytes;
+    private long rotateAt;
+    private final StringBuilder line;
+    private char[] chars;
+    private long cachedSecond;
+    private String cachedPrefix;
 
     public LoggerThread() {
-        LOG_FILE_PATH = "db/Logs/log";
+        this(Paths.get("db/Logs/log"));
+    }
+
+    public LoggerThread(Path logFile) {
+        LOG_FILE_PATH = logFile.toString();
+        slots = new Slot[CAPACITY];
+        sequences = new AtomicLongArray(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        mask = CAPACITY - 1;
+        tail = new AtomicLong();
+        waiter = new AtomicReference<>();
+        dropped = new LongAdder[LEVELS.length];
+        for (int i = 0; i < LEVELS.length; i++) dropped[i] = new LongAdder();
+        overflows = new AtomicLong();
+        reportedDrops = new long[LEVELS.length];
+        line = new StringBuilder(256);
+        chars = new char[256];
+        cachedSecond = Long.MIN_VALUE;
+        compressor = new LogCompressor(Paths.get(LOG_FILE_PATH));
+    }
+
+    /**
+     * Starts the logger on a platform or virtual thread, depending on the server's thread mode.
+     */
+    public void start() {
+        loggerThread = ServerThreads.start("logger", this);
+        compressorThread = ServerThreads.start("log-compressor", compressor);
+    }
+
+    /**
+     * Stops the logger once the events already recorded are written, closes the log file
+     * and stops the compressor. A rotated file that was not compressed yet is compressed
+     * on the next start. Events recorded after this call may be lost.
+     */
+    public void stop() {
+        stopping = true;
+        if (loggerThread == null) return;
+        LockSupport.unpark(loggerThread);
+        try {
+            loggerThread.join(STOP_TIMEOUT_MS);
+            compressorThread.interrupt();
+            compressorThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void log(String message) {
-        logQueue.add(message + "&" + Level.SEVERE);
+        publish(0, message);
     }
 
     public void info(String message) {
-        logQueue.add(message+ "&" + Level.INFO);
+        publish(2, message);
     }
 
     public void warning(String message) {
-        logQueue.add(message+ "&" + Level.WARNING);
+        publish(1, message);
+    }
+
+    /**
+     * Gets the number of events dropped because the ring was full.
+     *
+     * @return the number of dropped events of every level
+     */
+    public long getDroppedCount() {
+        long total = 0;
+        for (LongAdder counter : dropped) total += counter.sum();
+        return total;
+    }
+
+    /**
+     * Gets the number of events of a level dropped because the ring was full.
+     *
+     * @param level SEVERE, WARNING or INFO
+     * @return the number of dropped events of the level
+     */
+    public long getDroppedCount(Level level) {
+        for (int i = 0; i < LEVELS.length; i++)
+            if (LEVELS[i].equals(level)) return dropped[i].sum();
+        return 0;
+    }
+
+    /**
+     * Records an event, applying the overflow policy if the ring is full.
+     */
+    private void publish(int level, String message) {
+        if (tryPublish(level, message)) return;
+        if (OVERFLOW == OverflowPolicy.DROP
+                || (OVERFLOW == OverflowPolicy.SAMPLE && level != 0 && overflows.getAndIncrement() % SAMPLE_RATE != 0)) {
+            dropped[level].increment();
+            return;
+        }
+        int spins = 0;
+        while (!tryPublish(level, message)) {
+            if (spins++ < 100) Thread.onSpinWait();
+            else LockSupport.parkNanos(this, 50_000);
+        }
+    }
+
+    /**
+     * Claims the next slot and fills it.
+     *
+     * @return false if the ring is full
+     */
+    private boolean tryPublish(int level, String message) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (available < 0) {
+                return false; //o slot ainda não foi lido: o anel está cheio
+            } else {
+                position = tail.get();
+            }
+        }
+        Slot slot = slots[index];
+        slot.level = level;
+        slot.time = System.currentTimeMillis();
+        slot.thread = Thread.currentThread().getName();
+        slot.message = message;
+        sequences.set(index, position + 1);
+        Thread consumer = waiter.get();
+        if (consumer != null && waiter.compareAndSet(consumer, null)) LockSupport.unpark(consumer);
+        return true;
     }
 
     /**
      * Creates a log file at the specified path if it does not already exist.
      * Ensures that the necessary directories are created.
-     * Adds a file handler to the logger with a simple formatter.
+     * Opens a buffered writer that appends to the file.
      *
      * @throws IOException if an I/O error occurs
      */
-
     public void createLogFile() throws IOException {
         Path logFilePath = Paths.get(LOG_FILE_PATH);
         Files.createDirectories(logFilePath.getParent());
-        if (!Files.exists(logFilePath)) {
-            Files.createFile(logFilePath);
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(logFilePath,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        fileBytes = Files.size(logFilePath);
+        rotateAt = ROTATE_INTERVAL_MS > 0 ? System.currentTimeMillis() + ROTATE_INTERVAL_MS : Long.MAX_VALUE;
+    }
+
+    /**
+     * Closes the log file, renames it to log.&lt;time&gt; and opens a new one.
+     * The renamed file is handed to the compressor.
+     *
+     * @param time the time of the event that triggered the rotation
+     */
+    private void rotate(long time) {
+        Path logFilePath = Paths.get(LOG_FILE_PATH);
+        try {
+            writer.close();
+            writer = null;
+            String name = logFilePath.getFileName() + "." + ROTATED_FORMAT.format(Instant.ofEpochMilli(time));
+            Path rotated = logFilePath.resolveSibling(name);
+            for (int i = 1; Files.exists(rotated) || Files.exists(rotated.resolveSibling(rotated.getFileName() + ".gz")); i++)
+                rotated = logFilePath.resolveSibling(name + "-" + i);
+            Files.move(logFilePath, rotated);
+            compressor.compress(rotated);
+        } catch (IOException e) {
+            System.err.println("Log rotation error: " + e.getMessage());
+        }
+        try {
+            if (writer != null) writer.close();
+            createLogFile();
+        } catch (IOException e) {
+            writer = null;
+            rotateAt = Long.MAX_VALUE;
+            System.err.println("Logging error: " + e.getMessage());
         }
-        FileHandler fileHandler = new FileHandler(logFilePath.toString(), true);
-        fileHandler.setFormatter(new SimpleFormatter());
-        logger.addHandler(fileHandler);
     }
 
     /**
      * The run method is the entry point for the LoggerThread.
-     * It continuously takes log messages from the logQueue, splits the message to extract the log level and message content,
-     * and logs the message using the logger.
-     * 
-     * The method handles IOException and InterruptedException by logging the error at SEVERE level and interrupting the thread.
-     * 
-     * @throws IOException if an I/O error occurs while creating the log file.
-     * @throws InterruptedException if the thread is interrupted while waiting to take a message from the logQueue.
+     * It opens the log file and then writes every ready event, flushing the file whenever
+     * the ring is empty and parking until a new event is published.
+     *
+     * <p>If the log file cannot be written the error is printed and the events keep being
+     * consumed, so that callers never wait on a broken file. Once stopped and the ring is
+     * empty, the file is closed and the method returns.</p>
      */
     @Override
     public void run() {
         try {
             createLogFile();
-            while (true) {
-                String message = logQueue.take();
-                String[] parts = message.split("&");
-                logger.log(Level.parse(parts[1]), parts[0]);
-                
+        } catch (IOException e) {
+            System.err.println("Logging error: " + e.getMessage());
+        }
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) == head + 1) {
+                Slot slot = slots[index];
+                long time = slot.time;
+                format(LEVELS[slot.level], time, slot.thread, slot.message);
+                slot.thread = null;
+                slot.message = null;
+                sequences.set(index, head + CAPACITY);
+                head++;
+                if (writer != null && ((MAX_BYTES > 0 && fileBytes >= MAX_BYTES) || time >= rotateAt)) rotate(time);
+                write();
+                continue;
             }
-        } catch (IOException | InterruptedException e) {
-            logger.log(Level.SEVERE, "Logging error", e);
-            Thread.currentThread().interrupt();
+            reportDrops();
+            flush();
+            if (stopping) {
+                close();
+                return;
+            }
+            waiter.set(Thread.currentThread());
+            if (sequences.get(index) != head + 1 && !stopping) LockSupport.park(this);
+            waiter.set(null);
+        }
+    }
+
+    /**
+     * Writes a WARNING line with the events dropped since the last report.
+     */
+    private void reportDrops() {
+        StringBuilder counts = null;
+        for (int i = 0; i < LEVELS.length; i++) {
+            long total = dropped[i].sum();
+            if (total == reportedDrops[i]) continue;
+            if (counts == null) counts = new StringBuilder("Dropped log events:");
+            counts.append(' ').append(LEVELS[i]).append('=').append(total - reportedDrops[i]);
+            reportedDrops[i] = total;
+        }
+        if (counts == null) return;
+        format(Level.WARNING, System.currentTimeMillis(), Thread.currentThread().getName(), counts.toString());
+        write();
+    }
+
+    /**
+     * Formats an event into the line buffer.
+     */
+    private void format(Level level, long time, String thread, String message) {
+        long second = Math.floorDiv(time, 1000);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedPrefix = TIME_FORMAT.format(Instant.ofEpochSecond(second));
+        }
+        int millis = Math.floorMod(time, 1000);
+        line.setLength(0);
+        line.append(cachedPrefix);
+        if (millis < 100) line.append('0');
+        if (millis < 10) line.append('0');
+        line.append(millis).append(' ').append(level.getName()).append(" [").append(thread).append("] ");
+        if (message == null) {
+            line.append("null");
+        } else {
+            for (int i = 0; i < message.length(); i++) {
+                char c = message.charAt(i);
+                if (c == '\n') line.append("\\n");
+                else if (c == '\r') line.append("\\r");
+                else line.append(c);
+            }
+        }
+        line.append('\n');
+    }
+
+    private void write() {
+        if (writer == null) return;
+        int length = line.length();
+        if (length > chars.length) chars = new char[Math.max(length, chars.length * 2)];
+        line.getChars(0, length, chars, 0); //copia para um array reutilizado em vez de criar uma String
+        try {
+            writer.write(chars, 0, length);
+            fileBytes += length; //conta caracteres: exato para ASCII, aproximado para o resto
+        } catch (IOException e) {
+            System.err.println("Logging error: " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Logging error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Logging error: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    /**
+     * A preallocated event, reused every time the ring wraps around.
+     */
+    private static class Slot {
+        private int level;
+        private long time;
+        private String thread;
+        private String message;
+    }
+}
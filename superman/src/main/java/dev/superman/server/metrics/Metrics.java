@@ -0,0 +1,109 @@
+package dev.superman.server.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The Metrics class is the server's registry of named counters, gauges and histograms.
+ *
+ * <p>Counters are {@link LongAdder}s, so threads that count the same event do not contend.
+ * Gauges are read from a supplier when a report is made, for values the server already
+ * keeps, such as the number of sessions. {@link Histogram}s hold latencies in nanoseconds.
+ * Each metric is created on first use; callers on hot paths keep the returned object
+ * instead of looking it up every time.</p>
+ *
+ * <p>Names are dotted, with the chat room or queue last, for example
+ * {@code chat.persisted.ALTO}. A report lists every metric in name order, one per line:</p>
+ * <pre>
+ * login.latency count=12 mean=41.2ms p50=39.8ms p90=52.4ms p99=60.7ms p999=60.7ms max=60.7ms
+ * </pre>
+ */
+public class Metrics {
+    private final Map<String, LongAdder> counters;
+    private final Map<String, LongSupplier> gauges;
+    private final Map<String, Histogram> histograms;
+
+    public Metrics() {
+        counters = new ConcurrentHashMap<>();
+        gauges = new ConcurrentHashMap<>();
+        histograms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets a counter, creating it if needed.
+     *
+     * @param name the name of the counter
+     * @return the counter
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     *
+     * @param name the name of the gauge
+     * @param supplier reads the current value
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Gets a histogram, creating it if needed.
+     *
+     * @param name the name of the histogram
+     * @return the histogram
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Builds a report of every metric, one per line in name order.
+     *
+     * @return the report
+     */
+    public String report() {
+        Map<String, String> lines = new TreeMap<>();
+        counters.forEach((name, counter) -> lines.put(name, name + " " + counter.sum()));
+        gauges.forEach((name, gauge) -> lines.put(name, name + " " + gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> lines.put(name, name + " count=" + histogram.getCount()
+                + " mean=" + millis((long) histogram.getMean())
+                + " p50=" + millis(histogram.getPercentile(0.5))
+                + " p90=" + millis(histogram.getPercentile(0.9))
+                + " p99=" + millis(histogram.getPercentile(0.99))
+                + " p999=" + millis(histogram.getPercentile(0.999))
+                + " max=" + millis(histogram.getMax())));
+        return String.join("\n", lines.values());
+    }
+
+    /**
+     * Writes a report to a file, replacing the previous one in a single rename so readers
+     * never see a partial file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = parent.resolve(file.getFileName() + ".tmp");
+        Files.writeString(temporary, "# " + LocalDateTime.now() + "\n" + report() + "\n", StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+    }
+}
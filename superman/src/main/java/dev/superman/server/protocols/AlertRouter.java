@@ -0,0 +1,78 @@
+package dev.superman.server.protocols;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import dev.superman.server.Server;
+import dev.superman.server.protocols.Requests.RequestType;
+import dev.superman.server.schema.Alert;
+import dev.superman.server.schema.UserProfile.AccessLevel;
+import dev.superman.server.tcp.TCPConnection;
+import dev.superman.server.tcp.TCPHandler;
+
+/**
+ * The AlertRouter class sends alert messages only to the users who can act on them,
+ * following the same rules as {@code .accept} ({@link Requests#canAccept}).
+ *
+ * <p>Every chat room belongs to an access level, so the rooms whose level can accept a
+ * request type are computed once per type and receive the message by multicast. Users
+ * who can accept but are sitting in a lower room, which does not get the multicast, are
+ * sent the message over their TCP connection instead, except for the requester. The
+ * requester is told over TCP when their alert ends, unless they are in one of the rooms.</p>
+ *
+ * <p>Routing runs on the alert timer and on the thread of the user who accepted, so the
+ * TCP messages are only queued on each session with {@link TCPConnection#send(String)},
+ * which never waits for a slow client.</p>
+ */
+public class AlertRouter {
+    private final Server server;
+    private final Map<RequestType, Set<String>> rooms;
+
+    public AlertRouter(Server server) {
+        this.server = server;
+        rooms = new EnumMap<>(RequestType.class);
+        for (RequestType type : RequestType.values()) {
+            Set<String> eligible = new LinkedHashSet<>();
+            for (AccessLevel level : AccessLevel.values())
+                if (Requests.canAccept(level, type)) eligible.add(level.toString());
+            rooms.put(type, Collections.unmodifiableSet(eligible));
+        }
+    }
+
+    /**
+     * Sends a message about a pending alert to the rooms and users that can accept it.
+     *
+     * @param alert the alert the message is about
+     * @param message the message to send
+     */
+    public void route(Alert alert, String message) {
+        Set<String> targetRooms = rooms.get(alert.getType());
+        server.roomBroadcast(message, targetRooms);
+        TCPHandler tcpHandler = server.getTcpHandler();
+        if (tcpHandler == null) return;
+        for (TCPConnection session : tcpHandler.getSessions()) {
+            AccessLevel level = session.getAccessLevel();
+            if (level != null && Requests.canAccept(level, alert.getType()) && !targetRooms.contains(session.getCurrentRoom())
+                    && !session.getUsername().equals(alert.getRequester()))
+                session.send(message);
+        }
+    }
+
+    /**
+     * Sends the message that ends an alert to its audience and to the requester.
+     *
+     * @param alert the alert that was accepted or expired
+     * @param message the message to send
+     */
+    public void routeEnd(Alert alert, String message) {
+        route(alert, message);
+        TCPHandler tcpHandler = server.getTcpHandler();
+        if (tcpHandler == null) return;
+        TCPConnection requester = tcpHandler.getSession(alert.getRequester());
+        if (requester != null && !rooms.get(alert.getType()).contains(requester.getCurrentRoom())) //fora das salas que recebem o multicast
+            requester.send(message);
+    }
+}
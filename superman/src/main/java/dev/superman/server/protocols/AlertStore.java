@@ -0,0 +1,135 @@
+package dev.superman.server.protocols;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.superman.server.protocols.Requests.RequestType;
+import dev.superman.server.schema.Alert;
+
+/**
+ * The AlertStore class keeps the pending alerts, indexed by id and by {@link RequestType}.
+ *
+ * <p>An alert is pending while it is in the id index. Each request type also has a queue
+ * of its alerts in order of creation, so accepting the oldest alert of a type looks at the
+ * head of one queue instead of every alert.</p>
+ *
+ * <p>An alert is claimed by removing it from the id index, which is atomic: when several
+ * users accept at the same moment, each alert goes to exactly one of them and the others
+ * move on to the next alert of the queue. Claimed alerts are then removed from their
+ * queue; any left behind by a concurrent claim are dropped when they reach the head.</p>
+ */
+public class AlertStore {
+    private final AtomicLong nextId;
+    private final Map<Long, Alert> pending;
+    private final Map<RequestType, Queue<Alert>> byType;
+
+    public AlertStore() {
+        nextId = new AtomicLong(1);
+        pending = new ConcurrentHashMap<>();
+        byType = new EnumMap<>(RequestType.class);
+        for (RequestType type : RequestType.values())
+            byType.put(type, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Creates a pending alert.
+     *
+     * @param type the type of the alert
+     * @param requester the name of the user requesting the alert
+     * @return the new alert
+     */
+    public Alert add(RequestType type, String requester) {
+        Alert alert = new Alert(nextId.getAndIncrement(), type, requester, System.currentTimeMillis());
+        pending.put(alert.getId(), alert);
+        byType.get(type).add(alert);
+        return alert;
+    }
+
+    /**
+     * Claims the oldest pending alert of a type that was not requested by the acceptor.
+     *
+     * @param type the type of the alert to accept
+     * @param acceptor the name of the user accepting the alert
+     * @return the claimed alert, or null if there is none the acceptor can claim
+     */
+    public Alert claim(RequestType type, String acceptor) {
+        Queue<Alert> queue = purge(type);
+        for (Alert alert : queue) {
+            if (alert.getRequester().equals(acceptor)) continue;
+            if (pending.remove(alert.getId(), alert)) {
+                queue.remove(alert);
+                return alert;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a pending alert, for example when it expires.
+     *
+     * @param alert the alert to remove
+     * @return true if the alert was removed, false if it was already claimed
+     */
+    public boolean remove(Alert alert) {
+        if (!pending.remove(alert.getId(), alert)) return false;
+        byType.get(alert.getType()).remove(alert);
+        return true;
+    }
+
+    /**
+     * Checks if an alert is still pending.
+     *
+     * @param alert the alert to check
+     * @return true if the alert has not been claimed or removed
+     */
+    public boolean isPending(Alert alert) {
+        return pending.get(alert.getId()) == alert;
+    }
+
+    /**
+     * Checks if there is a pending alert of a type.
+     *
+     * @param type the type of the alert
+     * @return true if at least one alert of the type is pending
+     */
+    public boolean hasPending(RequestType type) {
+        return !purge(type).isEmpty();
+    }
+
+    /**
+     * Returns the pending alerts in order of creation.
+     *
+     * @return a copy of the pending alerts
+     */
+    public List<Alert> getPending() {
+        List<Alert> alerts = new ArrayList<>(pending.values());
+        alerts.sort(Comparator.comparingLong(Alert::getId));
+        return alerts;
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Drops the claimed alerts at the head of a type's queue.
+     */
+    private Queue<Alert> purge(RequestType type) {
+        Queue<Alert> queue = byType.get(type);
+        Alert head;
+        while ((head = queue.peek()) != null && !isPending(head))
+            queue.remove(head);
+        return queue;
+    }
+}
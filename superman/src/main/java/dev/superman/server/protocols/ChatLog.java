@@ -0,0 +1,402 @@
+package dev.superman.server.protocols;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * The ChatLog class stores the messages of one chat room as a sequence of rolling
+ * segment files with a sparse offset index, so that any range of the history can be
+ * read without scanning the whole room.
+ *
+ * <p>Every line is a record with a sequence number, starting at 0. Records are stored in
+ * the room's directory in segments named after the sequence of their first record:</p>
+ * <ul>
+ *   <li>{@code <base>.log}: the records, one per line, as they were received;</li>
+ *   <li>{@code <base>.idx}: one entry (relative sequence, byte position) every
+ *       INDEX_INTERVAL records.</li>
+ * </ul>
+ * <p>A new segment is started when the active one reaches {@code superman.chat.segmentBytes}
+ * (default 64 MB).</p>
+ *
+ * <p>Reads find the segment by sequence, look up the nearest index entry, memory-map the
+ * segment from that position and skip at most INDEX_INTERVAL lines before copying the
+ * requested records.</p>
+ *
+ * <p>Only the {@link RoomLogWriter} thread writes. Readers only see records that have
+ * been completely written. When a room's directory does not exist yet, the old single
+ * {@code <room>.txt} file is moved into it as the first segment.</p>
+ */
+public class ChatLog {
+    private static final long SEGMENT_BYTES = Long.getLong("superman.chat.segmentBytes", 64L * 1024 * 1024);
+    private static final int INDEX_INTERVAL = 128;
+    private static final int INDEX_ENTRY_BYTES = Integer.BYTES + Long.BYTES;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private final Path directory;
+    private volatile List<Segment> segments;
+    private volatile long nextSequence;
+    private FileChannel activeLog;
+    private FileChannel activeIndex;
+
+    public ChatLog(Path directory, Path legacyFile) throws IOException {
+        this.directory = directory;
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            if (Files.exists(legacyFile)) Files.move(legacyFile, logPath(0));
+        }
+        segments = loadSegments();
+        if (segments.isEmpty()) segments = List.of(new Segment(0, logPath(0), indexPath(0)));
+        openActive();
+    }
+
+    /**
+     * Returns the sequence number the next record will get, which is also the number of
+     * records written so far.
+     *
+     * @return the next sequence number
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Reads up to count records that come before a sequence number.
+     *
+     * @param before the sequence number after the last record to read (exclusive)
+     * @param count the maximum number of records to read
+     * @return the records, from the oldest to the most recent
+     */
+    public List<String> read(long before, int count) {
+        List<Segment> snapshot = segments;
+        long end = Math.min(before, nextSequence);
+        long start = Math.max(snapshot.get(0).baseSequence, end - count);
+        List<String> records = new ArrayList<>();
+        if (start >= end) return records;
+        for (Segment segment : snapshot) {
+            long segmentEnd = segment.baseSequence + segment.records;
+            if (segmentEnd <= start || segment.baseSequence >= end) continue;
+            try {
+                segment.read(Math.max(start, segment.baseSequence) - segment.baseSequence,
+                             Math.min(end, segmentEnd) - segment.baseSequence, records);
+            } catch (IOException ignored) {}
+        }
+        return records;
+    }
+
+    /**
+     * Appends a batch of complete lines to the active segment, starting new segments when
+     * it is full, and updates the index. Called by the RoomLogWriter thread only.
+     *
+     * <p>The buffers written are consumed. If a write fails, the buffers of the part that was
+     * not published are restored, so that the batch can be written again after
+     * {@link #reopen()} without duplicating or losing records.</p>
+     *
+     * @param batch the buffers to write, each one holding whole lines
+     * @throws IOException if the data cannot be written
+     */
+    void write(List<ByteBuffer> batch) throws IOException {
+        int from = 0;
+        while (from < batch.size()) {
+            Segment active = segments.get(segments.size() - 1);
+            long size = active.size;
+            long bytes = 0;
+            int to = from;
+            while (to < batch.size() && (size + bytes == 0 || size + bytes + batch.get(to).remaining() <= SEGMENT_BYTES))
+                bytes += batch.get(to++).remaining();
+            if (to == from) {
+                roll();
+                continue;
+            }
+            ByteBuffer[] chunk = batch.subList(from, to).toArray(new ByteBuffer[0]);
+            int[] starts = new int[chunk.length];
+            for (int i = 0; i < chunk.length; i++) starts[i] = chunk[i].position();
+            ByteBuffer indexEntries = ByteBuffer.allocate(INDEX_ENTRY_BYTES * (int) (bytes / INDEX_INTERVAL + 1));
+            long records = active.records;
+            long position = size;
+            for (ByteBuffer buffer : chunk) {
+                for (int i = buffer.position(); i < buffer.limit(); i++) {
+                    position++;
+                    if (buffer.get(i) == '\n' && ++records % INDEX_INTERVAL == 0) {
+                        if (!indexEntries.hasRemaining()) indexEntries = grow(indexEntries);
+                        indexEntries.putInt((int) records).putLong(position);
+                        active.addIndexEntry((int) records, position);
+                    }
+                }
+            }
+            try {
+                long remaining = bytes;
+                while (remaining > 0) remaining -= activeLog.write(chunk);
+                indexEntries.flip();
+                while (indexEntries.hasRemaining()) activeIndex.write(indexEntries);
+            } catch (IOException e) {
+                for (int i = 0; i < chunk.length; i++) chunk[i].position(starts[i]); //o reopen descarta o que foi escrito
+                throw e;
+            }
+            active.publish(size + bytes, records);
+            nextSequence = active.baseSequence + records;
+            from = to;
+        }
+    }
+
+    /**
+     * Forces the active segment to disk.
+     *
+     * @throws IOException if the data cannot be forced
+     */
+    void force() throws IOException {
+        activeLog.force(false);
+    }
+
+    /**
+     * Closes the active segment's files.
+     */
+    void close() {
+        try {
+            activeLog.close();
+            activeIndex.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Reopens the active segment after a failed write or roll: the bytes written after its
+     * last published record are truncated, its index is reloaded from the files and both
+     * files are opened again. Called by the RoomLogWriter thread only.
+     *
+     * @throws IOException if the segment cannot be reopened
+     */
+    void reopen() throws IOException {
+        close();
+        Segment active = segments.get(segments.size() - 1);
+        try (FileChannel log = FileChannel.open(active.logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            log.truncate(active.size);
+        }
+        Segment reloaded = new Segment(active.baseSequence, active.logPath, active.indexPath);
+        reloaded.recover(); //o índice em memória pode ter entradas de registos que não foram escritos
+        List<Segment> reopened = new ArrayList<>(segments);
+        reopened.set(reopened.size() - 1, reloaded);
+        segments = List.copyOf(reopened);
+        openActive();
+    }
+
+    /**
+     * Seals the active segment and starts a new one at the next sequence number.
+     */
+    private void roll() throws IOException {
+        activeLog.force(false);
+        close();
+        long base = nextSequence;
+        List<Segment> rolled = new ArrayList<>(segments);
+        rolled.add(new Segment(base, logPath(base), indexPath(base)));
+        segments = List.copyOf(rolled);
+        openActive();
+    }
+
+    private void openActive() throws IOException {
+        Segment active = segments.get(segments.size() - 1);
+        activeLog = FileChannel.open(active.logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeIndex = FileChannel.open(active.indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        activeIndex.truncate(active.indexedEntries() * (long) INDEX_ENTRY_BYTES);
+        activeIndex.position(activeIndex.size());
+        nextSequence = active.baseSequence + active.records;
+    }
+
+    /**
+     * Loads the segments found in the room's directory. The index of each segment is read
+     * and completed by scanning the records written after its last entry.
+     */
+    private List<Segment> loadSegments() throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                 .filter(name -> name.endsWith(LOG_SUFFIX))
+                 .forEach(name -> {
+                     try {
+                         bases.add(Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())));
+                     } catch (NumberFormatException ignored) {}
+                 });
+        }
+        bases.sort(null);
+        List<Segment> loaded = new ArrayList<>();
+        for (long base : bases) {
+            Segment segment = new Segment(base, logPath(base), indexPath(base));
+            segment.recover();
+            loaded.add(segment);
+        }
+        return List.copyOf(loaded);
+    }
+
+    private Path logPath(long base) {
+        return directory.resolve(String.format("%020d", base) + LOG_SUFFIX);
+    }
+
+    private Path indexPath(long base) {
+        return directory.resolve(String.format("%020d", base) + INDEX_SUFFIX);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    /**
+     * A segment of the chat log and its in-memory sparse index. Entry 0 always points to
+     * the start of the file.
+     */
+    private static class Segment {
+        private final long baseSequence;
+        private final Path logPath;
+        private final Path indexPath;
+        private final ReentrantLock indexLock = new ReentrantLock();
+        private int[] indexSequences = new int[16];
+        private long[] indexPositions = new long[16];
+        private int indexSize = 1;
+        private volatile long size;
+        private volatile long records;
+
+        Segment(long baseSequence, Path logPath, Path indexPath) {
+            this.baseSequence = baseSequence;
+            this.logPath = logPath;
+            this.indexPath = indexPath;
+        }
+
+        void addIndexEntry(int sequence, long position) {
+            indexLock.lock();
+            try {
+                if (indexSize == indexSequences.length) {
+                    indexSequences = Arrays.copyOf(indexSequences, indexSize * 2);
+                    indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+                }
+                indexSequences[indexSize] = sequence;
+                indexPositions[indexSize++] = position;
+            } finally {
+                indexLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the number of index entries stored in the index file (entry 0 is implicit).
+         */
+        int indexedEntries() {
+            indexLock.lock();
+            try {
+                return indexSize - 1;
+            } finally {
+                indexLock.unlock();
+            }
+        }
+
+        /**
+         * Publishes newly written records. The size is set first, so a reader that sees the
+         * new record count also sees the bytes that hold them.
+         */
+        void publish(long size, long records) {
+            this.size = size;
+            this.records = records;
+        }
+
+        /**
+         * Copies the records in [from, to), relative to the segment, into the result list.
+         */
+        void read(long from, long to, List<String> result) throws IOException {
+            long committedSize = size;
+            int entrySequence;
+            long entryPosition;
+            indexLock.lock();
+            try {
+                int low = 0, high = indexSize - 1;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    if (indexSequences[middle] <= from) low = middle;
+                    else high = middle - 1;
+                }
+                entrySequence = indexSequences[low];
+                entryPosition = indexPositions[low];
+            } finally {
+                indexLock.unlock();
+            }
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, entryPosition, committedSize - entryPosition);
+                long sequence = entrySequence;
+                int lineStart = 0;
+                for (int i = 0; i < mapped.limit() && sequence < to; i++) {
+                    if (mapped.get(i) != '\n') continue;
+                    if (sequence >= from) {
+                        int lineEnd = i > lineStart && mapped.get(i - 1) == '\r' ? i - 1 : i;
+                        byte[] line = new byte[lineEnd - lineStart];
+                        mapped.get(lineStart, line);
+                        result.add(new String(line, StandardCharsets.UTF_8));
+                    }
+                    sequence++;
+                    lineStart = i + 1;
+                }
+            }
+        }
+
+        /**
+         * Reads the index file, drops entries past the end of the data and indexes the
+         * records written after the last entry. A last line without a line break, as found
+         * in old room files, is completed first.
+         */
+        void recover() throws IOException {
+            long fileSize = Files.size(logPath);
+            if (fileSize > 0 && lastByte(fileSize) != '\n') {
+                Files.write(logPath, new byte[] {'\n'}, StandardOpenOption.APPEND);
+                fileSize++;
+            }
+            if (Files.exists(indexPath)) {
+                ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+                while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+                    int sequence = entries.getInt();
+                    long position = entries.getLong();
+                    if (position > fileSize || sequence <= indexSequences[indexSize - 1]) break;
+                    addIndexEntry(sequence, position);
+                }
+            }
+            long sequence = indexSequences[indexSize - 1];
+            long position = indexPositions[indexSize - 1];
+            List<long[]> missing = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                if (fileSize > position) {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, fileSize - position);
+                    for (int i = 0; i < mapped.limit(); i++) {
+                        if (mapped.get(i) == '\n' && ++sequence % INDEX_INTERVAL == 0) {
+                            addIndexEntry((int) sequence, position + i + 1);
+                            missing.add(new long[] {sequence, position + i + 1});
+                        }
+                    }
+                }
+            }
+            if (!missing.isEmpty()) {
+                ByteBuffer entries = ByteBuffer.allocate(missing.size() * INDEX_ENTRY_BYTES);
+                for (long[] entry : missing) entries.putInt((int) entry[0]).putLong(entry[1]);
+                entries.flip();
+                try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    index.truncate((indexedEntries() - missing.size()) * (long) INDEX_ENTRY_BYTES);
+                    index.position(index.size());
+                    while (entries.hasRemaining()) index.write(entries);
+                }
+            }
+            publish(fileSize, sequence);
+        }
+
+        private byte lastByte(long fileSize) throws IOException {
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, fileSize - 1);
+                return last.get(0);
+            }
+        }
+    }
+}
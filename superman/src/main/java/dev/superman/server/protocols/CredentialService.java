@@ -0,0 +1,171 @@
+package dev.superman.server.protocols;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * The CredentialService class runs every BCrypt operation on a dedicated, bounded
+ * worker pool, so that a burst of logins cannot take every core away from chat relay.
+ *
+ * <p>Admission control happens before any work is queued:</p>
+ * <ul>
+ *   <li>each client address and each username may only have a few operations in flight;</li>
+ *   <li>when the pool's queue is full, the operation is rejected immediately.</li>
+ * </ul>
+ * <p>Operations are asynchronous: the caller gets a CompletableFuture and is never blocked
+ * while a password is hashed, so a NIO worker or reactor can move on to other sessions.
+ * Rejected or timed out operations complete with null, which callers report as "server
+ * busy"; an operation that times out before a worker takes it is never run.</p>
+ *
+ * <p>The BCrypt cost factor is configurable. When a user logs in with a hash made with a
+ * different cost, the password is rehashed in the background and written back through
+ * the {@link UserRegistry}.</p>
+ *
+ * <p>Configuration (system properties):</p>
+ * <ul>
+ *   <li>superman.bcrypt.threads: worker threads (default: half the cores, at least 1)</li>
+ *   <li>superman.bcrypt.queue: queued operations before rejecting (default 64)</li>
+ *   <li>superman.bcrypt.cost: BCrypt cost factor for new hashes (default 10)</li>
+ *   <li>superman.login.maxPerIp: operations in flight per client address (default 4)</li>
+ *   <li>superman.login.maxPerUser: operations in flight per username (default 2)</li>
+ * </ul>
+ */
+public class CredentialService {
+    private static final int THREADS = Integer.getInteger("superman.bcrypt.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("superman.bcrypt.queue", 64);
+    private static final int COST = Integer.getInteger("superman.bcrypt.cost", 10);
+    private static final int MAX_PER_IP = Integer.getInteger("superman.login.maxPerIp", 4);
+    private static final int MAX_PER_USER = Integer.getInteger("superman.login.maxPerUser", 2);
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final long STOP_TIMEOUT_MS = 5000;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Integer> inFlightPerIp;
+    private final Map<String, Integer> inFlightPerUser;
+    private final UserRegistry userRegistry;
+
+    public CredentialService(UserRegistry userRegistry) {
+        this.userRegistry = userRegistry;
+        inFlightPerIp = new ConcurrentHashMap<>();
+        inFlightPerUser = new ConcurrentHashMap<>();
+        AtomicInteger threadId = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            task -> Thread.ofPlatform().daemon().name("bcrypt-" + threadId.getAndIncrement()).unstarted(task),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Checks a password against the stored hash of a user on the worker pool.
+     *
+     * @param user the stored user entry
+     * @param password the password provided by the user
+     * @param clientAddress the address of the client, used for admission control
+     * @return a future completed with TRUE or FALSE with the result of the check, or with null
+     *         if the request was not admitted or timed out
+     */
+    public CompletableFuture<Boolean> verify(UserRegistry.UserEntry user, String password, String clientAddress) {
+        return submit(clientAddress, user.getUsername(), () -> BCrypt.checkpw(password, user.getPasswordHash()))
+            .thenApply(valid -> {
+                if (Boolean.TRUE.equals(valid) && costOf(user.getPasswordHash()) != COST) rehash(user, password);
+                return valid;
+            });
+    }
+
+    /**
+     * Hashes a new password with the configured cost on the worker pool.
+     *
+     * @param username the username the password belongs to
+     * @param password the password to hash
+     * @param clientAddress the address of the client, used for admission control
+     * @return a future completed with the BCrypt hash, or with null if the request was not
+     *         admitted or timed out
+     */
+    public CompletableFuture<String> hash(String username, String password, String clientAddress) {
+        return submit(clientAddress, username, () -> BCrypt.hashpw(password, BCrypt.gensalt(COST)));
+    }
+
+    /**
+     * Rehashes a password with the configured cost in the background. If the pool is
+     * full the rehash is skipped and retried on a later login.
+     */
+    private void rehash(UserRegistry.UserEntry user, String password) {
+        try {
+            executor.execute(() -> userRegistry.updatePasswordHash(user, BCrypt.hashpw(password, BCrypt.gensalt(COST))));
+        } catch (RejectedExecutionException ignored) {}
+    }
+
+    /**
+     * Stops the worker pool, letting the operations already queued finish for up to
+     * STOP_TIMEOUT_MS before interrupting them. Called by the server when it stops, after
+     * its connections are closed.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Admits an operation for a client address and username and queues it. The admission is
+     * released when the operation completes or times out.
+     */
+    private <T> CompletableFuture<T> submit(String clientAddress, String username, Supplier<T> task) {
+        if (!acquire(inFlightPerIp, clientAddress, MAX_PER_IP)) return CompletableFuture.completedFuture(null);
+        if (!acquire(inFlightPerUser, username, MAX_PER_USER)) {
+            release(inFlightPerIp, clientAddress);
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<T> result;
+        try {
+            result = CompletableFuture.supplyAsync(task, executor)
+                .completeOnTimeout(null, TIMEOUT_SECONDS, TimeUnit.SECONDS); //uma tarefa ainda na fila já não corre
+        } catch (RejectedExecutionException e) {
+            result = CompletableFuture.completedFuture(null);
+        }
+        return result.whenComplete((value, error) -> {
+            release(inFlightPerUser, username);
+            release(inFlightPerIp, clientAddress);
+        });
+    }
+
+    private static boolean acquire(Map<String, Integer> inFlight, String key, int limit) {
+        boolean[] admitted = {false};
+        inFlight.compute(key, (k, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= limit) return count;
+            admitted[0] = true;
+            return current + 1;
+        });
+        return admitted[0];
+    }
+
+    private static void release(Map<String, Integer> inFlight, String key) {
+        inFlight.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * Reads the cost factor of a BCrypt hash such as "$2a$10$...".
+     *
+     * @return the cost factor, or -1 if the hash is malformed
+     */
+    private static int costOf(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
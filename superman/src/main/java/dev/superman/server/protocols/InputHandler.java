@@ -1,21 +1,28 @@
 package dev.superman.server.protocols;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.security.crypto.bcrypt.BCrypt;
+import dev.superman.ED.BufferPool;
+import dev.superman.ED.LineRingBuffer;
 
+import dev.superman.server.jfr.HistoryReadEvent;
+import dev.superman.server.jfr.JoinEvent;
+import dev.superman.server.jfr.LoginEvent;
+import dev.superman.server.jfr.PersistEvent;
+import dev.superman.server.loggerThread.LoggerThread;
+import dev.superman.server.metrics.Metrics;
 import dev.superman.server.schema.UserProfile;
 import dev.superman.server.schema.UserProfile.AccessLevel;
-import dev.superman.server.udp.UDPConnection;
 import dev.superman.server.*;
 import dev.superman.server.protocols.Requests.RequestType;
 
@@ -36,59 +43,126 @@ import dev.superman.server.protocols.Requests.RequestType;
  *   <li>Handling alert requests based on user permissions</li>
  * </ul>
  * 
- * <p>Private helper methods are used to check user existence, create files, and determine
- * access permissions for rooms and requests.</p>
+ * <p>Users are looked up in a {@link UserRegistry}, an in-memory index of the user database
+ * that is loaded once at startup. Every room's messages are stored in a segmented
+ * {@link ChatLog}, from which pages of history are read by sequence number. The last
+ * RECENT_MESSAGES lines of every room are kept as bytes in a {@link LineRingBuffer}, seeded
+ * at startup from the end of the room's log and updated by addMessage, so joining a room does
+ * not read the disk and relaying a message does not decode it. Private helper methods are used to create files and
+ * determine access permissions for rooms and requests.</p>
  * 
  * <p>Dependencies:</p>
  * <ul>
  *   <li>Requests: Handles server requests</li>
  *   <li>Server: Manages server broadcasting</li>
- *   <li>BCrypt: Used for password hashing and verification</li>
- *   <li>UDPConnection: Provides multicast socket information</li>
+ *   <li>CredentialService: Runs BCrypt password hashing and verification on a bounded pool</li>
+ *   <li>Server: Also provides the multicast group of every room</li>
+ *   <li>Metrics: The server's metrics registry, which this class creates and records
+ *       login outcomes and persisted messages in; the TCP connections record the login
+ *       and join latency</li>
  * </ul>
+ *
+ * <p>verifyLogin, joinRoom, addMessage and getMessages record JDK Flight Recorder events
+ * (see {@link dev.superman.server.jfr}) when a recording enables them.</p>
  * 
  * <p>Note: The class assumes the existence of certain directories and files for user and chat
- * room data. It creates these files if they do not exist.</p>
+ * room data under the server's data directory ({@code db/} by default). It creates these files
+ * if they do not exist.</p>
  */
 public class InputHandler {
-    private static final String DB = "db/";
-    private static final String USERDB = DB + "users.txt";
-    private static final String CHATSDBFOLDER = DB + "chats/";
+    private static final String USERDB = "users.txt";
+    private static final String CHATSDBFOLDER = "chats";
+    private static final int RECENT_MESSAGES = 5;
+    private static final int RECENT_LINE_BYTES = 1024; //o tamanho máximo de um datagrama de chat
+    private Path chatsFolder;
     private Requests requests;
     private Server server;
+    private UserRegistry userRegistry;
+    private CredentialService credentialService;
+    private Map<String, LineRingBuffer> recentMessages;
+    private Map<String, ChatLog> chatLogs;
+    private Map<String, RoomLogWriter> roomWriters;
+    private Metrics metrics;
+    private LoggerThread logger;
 
-    public InputHandler(Requests requests, Server server) {
+    public InputHandler(Requests requests, Server server, Path dataDirectory, LoggerThread logger) {
         this.requests = requests;
         this.server = server;
-        createFile(USERDB);
-        createFile(CHATSDBFOLDER + "Alto.txt");
-        createFile(CHATSDBFOLDER + "Medio.txt");
-        createFile(CHATSDBFOLDER + "Baixo.txt");
-        createFile(CHATSDBFOLDER + "Convidado.txt");
+        this.logger = logger;
+        metrics = new Metrics();
+        metrics.histogram("login.latency"); //registado já, mas medido pelas ligações TCP
+        String userFile = dataDirectory.resolve(USERDB).toString();
+        chatsFolder = dataDirectory.resolve(CHATSDBFOLDER);
+        createFile(userFile);
+        userRegistry = new UserRegistry(userFile);
+        credentialService = new CredentialService(userRegistry);
+        chatLogs = new ConcurrentHashMap<>();
+        roomWriters = new ConcurrentHashMap<>();
+        recentMessages = new ConcurrentHashMap<>();
+        for (AccessLevel level : AccessLevel.values()) { //cada nível de acesso tem a sua sala
+            String room = level.toString();
+            recentMessages.put(room, loadRecentMessages(room));
+            metrics.counter("chat.persisted." + room);
+        }
+    }
+
+    /**
+     * Writes the messages still queued to the chat logs, closes them and stops the
+     * password hashing pool. Called by the server when it stops.
+     */
+    public void close() {
+        for (RoomLogWriter writer : roomWriters.values())
+            writer.close();
+        credentialService.close();
     }
 
     /**
      * Verifies the login credentials of a user by checking the provided username and password
-     * against the stored user database.
+     * against the stored user database. The password check runs on the CredentialService pool
+     * and the caller is not blocked meanwhile.
      *
      * @param username the username provided by the user
      * @param password the password provided by the user
-     * @return the user role if the credentials are valid, or null if the credentials are invalid
+     * @param clientAddress the address of the client, used for admission control
+     * @return a future completed with the user role if the credentials are valid, "BUSY" if the
+     *         login was not admitted, or null if the credentials are invalid
      */
-    public String verifyLogin(String username, String password) {
-
-        try (BufferedReader fileReader = Files.newBufferedReader(Paths.get(USERDB))) {
-            String line;
-            while ((line = fileReader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 3 && parts[0].equals(username) && BCrypt.checkpw(password, parts[1])) 
-                    return parts[2];
+    public CompletableFuture<String> verifyLogin(String username, String password, String clientAddress) {
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        return checkLogin(username, password, clientAddress).whenComplete((result, error) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.user = username;
+                event.result = result != null ? result : "FAILED";
+                event.commit();
             }
-            
-        } catch (IOException e) {
-            e.printStackTrace();
+        });
+    }
+
+    private CompletableFuture<String> checkLogin(String username, String password, String clientAddress) {
+        UserRegistry.UserEntry user = userRegistry.find(username);
+        if (user == null) {
+            metrics.counter("login.failed").increment();
+            return CompletableFuture.completedFuture(null);
         }
-        return null;
+        return credentialService.verify(user, password, clientAddress).thenApply(valid -> {
+            if (valid == null) {
+                metrics.counter("login.busy").increment();
+                return "BUSY";
+            }
+            metrics.counter(valid ? "login.succeeded" : "login.failed").increment();
+            return valid ? user.getAccessLevel() : null;
+        });
+    }
+
+    /**
+     * Retrieves the server's metrics registry.
+     *
+     * @return the metrics registry
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -96,20 +170,28 @@ public class InputHandler {
      *
      * @param username the username of the new user
      * @param password the password of the new user
-     * @return a message indicating whether the registration was successful or if the username already exists
+     * @param clientAddress the address of the client, used for admission control
+     * @return a future completed with a message indicating whether the registration was successful,
+     *         if the username already exists or if it is not valid, or if the user could not be saved
      */
-    public String registerUser(String username, String password) {
-        if (userExists(username)) {
-            return "Username already exists. Please choose another one.";
+    public CompletableFuture<String> registerUser(String username, String password, String clientAddress) {
+        if (!isValidUsername(username)) { //o protocolo binário deixa passar espaços e mudanças de linha
+            return CompletableFuture.completedFuture("Invalid username, it cannot be empty or contain spaces or commas.");
         }
-        try {
-            String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt());
-            String userEntry = username + "," + hashedPassword + "," + AccessLevel.CONVIDADO + "\n";
-            Files.write(Paths.get(USERDB), userEntry.getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (userRegistry.exists(username)) {
+            return CompletableFuture.completedFuture("Username already exists. Please choose another one.");
         }
-        return "Registration successful. You can now log in.";
+        return credentialService.hash(username, password, clientAddress).thenApply(hashedPassword -> {
+            if (hashedPassword == null) return "Server busy, please try again later.";
+            try {
+                if (!userRegistry.register(username, hashedPassword, AccessLevel.CONVIDADO.toString()))
+                    return "Username already exists. Please choose another one.";
+            } catch (IOException e) {
+                logger.log("Failed to register user " + username + ": " + e);
+                return "Registration failed, please try again later.";
+            }
+            return "Registration successful. You can now log in.";
+        });
     }
 
     /**
@@ -119,7 +201,7 @@ public class InputHandler {
      * @return the room name associated with the given address, or an empty string if no match is found
      */
     public String getRoomName(String address) {
-        for (Map.Entry<String,String> entry : UDPConnection.getMulticastsocketsInfo().entrySet()) {
+        for (Map.Entry<String,String> entry : server.getGroups().entrySet()) {
             if (entry.getValue().equals(address)) return entry.getKey();
         }
         return "";
@@ -135,6 +217,8 @@ public class InputHandler {
      *         otherwise a message indicating that the user does not have permission or the room does not exist.
      */
     public String joinRoom(UserProfile userProfile, String room) {
+        JoinEvent event = new JoinEvent();
+        event.begin();
         boolean result;
         switch (userProfile.getAccessLevel()) {
             case AccessLevel.ALTO:
@@ -150,39 +234,138 @@ public class InputHandler {
                 result = isAllowedToEnter(new AccessLevel[]{AccessLevel.CONVIDADO}, room);
                 break;
         }
-        if (result) return UDPConnection.getMulticastsocketsInfo().get(room);
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = room;
+            event.user = userProfile.getName();
+            event.allowed = result;
+            event.commit();
+        }
+        if (result) return server.getGroups().get(room);
         
         else return "DENY";
     }
 
 
     /**
-     * Retrieves the messages from the specified chat room.
+     * Retrieves a page of messages from the specified chat room. Only the segment region
+     * holding the page is read, so the cost does not depend on the size of the history.
      * 
      * @param roomName the name of the chat room
-     * @return a list of messages from the chat room
+     * @param count the maximum number of messages to retrieve
+     * @param before the sequence number after the last message to retrieve (exclusive)
+     * @return a list of messages from the chat room, from the oldest to the most recent
+     */
+    public List<String> getMessages(String roomName, int count, long before) {
+        HistoryReadEvent event = new HistoryReadEvent();
+        event.begin();
+        ChatLog chatLog = getChatLog(roomName);
+        List<String> lines = chatLog != null ? chatLog.read(before, count) : new ArrayList<>();
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = roomName;
+            event.messages = lines.size();
+            for (String line : lines) event.bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            event.commit();
+        }
+        return lines;
+    }
+
+    /**
+     * Retrieves the number of messages stored for the specified chat room, which is also
+     * the sequence number the next message will get.
+     *
+     * @param roomName the name of the chat room
+     * @return the number of messages in the chat room
      */
-    public List<String> getMessages(String roomName) {
-        try {
-            return Files.readAllLines(Paths.get(CHATSDBFOLDER + roomName + ".txt"));
-        } catch (IOException ignored) {}
-        return new ArrayList<>();
+    public long getMessageCount(String roomName) {
+        ChatLog chatLog = getChatLog(roomName);
+        return chatLog != null ? chatLog.getNextSequence() : 0;
+    }
+
+    /**
+     * Retrieves the most recent messages of the specified chat room from memory.
+     *
+     * @param roomName the name of the chat room
+     * @return up to RECENT_MESSAGES lines, from the oldest to the most recent
+     */
+    public List<String> getRecentMessages(String roomName) {
+        LineRingBuffer recent = recentMessages.get(roomName);
+        return recent != null ? recent.snapshot() : new ArrayList<>();
     }
 
 
 
     /**
-     * Adds a message to the specified chat room's log file.
-     * If the file does not exist, it will be created.
+     * Adds a message to the specified chat room's log.
+     * If the log does not exist, it will be created. The message is handed to the room's
+     * {@link RoomLogWriter}, which coalesces concurrent appends into one write.
      * 
      * @param roomName the name of the chat room
      * @param message the message to be added to the chat room's log file
      */
     public void addMessage(String roomName, String message) {
+        addMessage(roomName, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    /**
+     * Adds a message received as UTF-8 bytes to the specified chat room's log, without
+     * decoding it. The lines of the message are copied into the room's recent messages and
+     * the buffer itself is handed to the room's {@link RoomLogWriter}, which owns it from
+     * now on and returns it to its pool once written. If the writer has failed, the message
+     * is counted in chat.dropped.&lt;room&gt;.
+     *
+     * @param roomName the name of the chat room
+     * @param message the bytes between the buffer's position and limit, ending with a line terminator
+     * @param pool the pool the buffer was taken from, or null
+     */
+    public void addMessage(String roomName, ByteBuffer message, BufferPool pool) {
+        PersistEvent event = new PersistEvent();
+        event.begin();
+        int from = message.position();
+        int to = message.limit();
+        LineRingBuffer recent = recentMessages.computeIfAbsent(roomName, room -> new LineRingBuffer(RECENT_MESSAGES, RECENT_LINE_BYTES));
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (message.get(i) != '\n') continue;
+            recent.add(message, start, i);
+            start = i + 1;
+        }
+        if (start < to) recent.add(message, start, to);
+        String user = event.isEnabled() ? userOf(message, from, to) : null; //o buffer deixa de ser nosso depois do append
+        RoomLogWriter writer = getRoomWriter(roomName);
+        if (writer != null) {
             try {
-                Files.write(Paths.get(CHATSDBFOLDER + roomName + ".txt"), message.getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-            } catch (IOException ignored) {}
+                writer.append(message, pool);
+            } catch (IOException e) { //o writer já registou a falha no log
+                metrics.counter("chat.dropped." + roomName).increment();
+            }
+        } else if (pool != null) {
+            pool.release(message);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = roomName;
+            event.user = user;
+            event.bytes = to - from;
+            event.commit();
+        }
+    }
+
+    /**
+     * Finds the sender of a message, which clients write before the first ": ".
+     *
+     * @return the sender, or null if the message has none
+     */
+    private static String userOf(ByteBuffer message, int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            byte b = message.get(i);
+            if (b == '\n') break;
+            if (b == ':' && message.get(i + 1) == ' ')
+                return i > from ? StandardCharsets.UTF_8.decode(message.slice(from, i - from)).toString() : null;
         }
+        return null;
+    }
         
     
 
@@ -248,27 +431,6 @@ public class InputHandler {
         else requests.addRequest(type, userProfile);return type + " request sent, wait for someone to accept it";
 }
 
-    /**
-     * Checks if a user exists in the database.
-     *
-     * @param username the username to check for existence
-     * @return true if the user exists, false otherwise
-     */
-    private boolean userExists(String username) {
-        try (BufferedReader fileReader = Files.newBufferedReader(Paths.get(USERDB))) {
-            String line;
-            while ((line = fileReader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 3 && parts[0].equals(username)) {
-                    return true;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
-    }
-
     /**
      * Determines if the user has permission to make a specific type of request.
      *
@@ -295,6 +457,22 @@ public class InputHandler {
 
     
 
+    /**
+     * Checks that a username can be stored in the user database, whose fields are separated
+     * by commas, and sent in a text userinfo line, whose fields are separated by spaces.
+     *
+     * @param username the username to check
+     * @return true if the username is not empty and has no whitespace or commas
+     */
+    private boolean isValidUsername(String username) {
+        if (username.isEmpty()) return false;
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (c == ',' || Character.isWhitespace(c)) return false;
+        }
+        return true;
+    }
+
     /**
      * Creates a new file at the specified path if it does not already exist.
      * If the parent directories do not exist, they will be created.
@@ -311,6 +489,56 @@ public class InputHandler {
         }
     }
 
+    /**
+     * Retrieves the writer of a room's chat log, starting it on first use.
+     *
+     * @param roomName the name of the chat room
+     * @return the room's writer, or null if the chat log could not be opened
+     */
+    private RoomLogWriter getRoomWriter(String roomName) {
+        return roomWriters.computeIfAbsent(roomName, room -> {
+            ChatLog chatLog = getChatLog(room);
+            if (chatLog == null) return null;
+            RoomLogWriter writer = new RoomLogWriter(room, chatLog, metrics.counter("chat.persisted." + room), logger);
+            writer.start();
+            return writer;
+        });
+    }
+
+    /**
+     * Retrieves the chat log of a room, opening it on first use. The first time a room is
+     * opened, its old single file is moved into the room's directory as the first segment.
+     *
+     * @param roomName the name of the chat room
+     * @return the room's chat log, or null if it could not be opened
+     */
+    private ChatLog getChatLog(String roomName) {
+        return chatLogs.computeIfAbsent(roomName, room -> {
+            try {
+                return new ChatLog(chatsFolder.resolve(room), chatsFolder.resolve(room + ".txt"));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates the recent-messages buffer of a room and fills it with the last records of
+     * the room's chat log, which are found through the log's index.
+     *
+     * @param roomName the name of the chat room
+     * @return the buffer with the room's most recent lines
+     */
+    private LineRingBuffer loadRecentMessages(String roomName) {
+        LineRingBuffer recent = new LineRingBuffer(RECENT_MESSAGES, RECENT_LINE_BYTES);
+        ChatLog chatLog = getChatLog(roomName);
+        if (chatLog == null) return recent;
+        for (String line : chatLog.read(Long.MAX_VALUE, RECENT_MESSAGES))
+            if (!line.isEmpty()) recent.add(line);
+        return recent;
+    }
+
     /**
      * Checks if access to a specified room is allowed based on the provided access levels.
      *
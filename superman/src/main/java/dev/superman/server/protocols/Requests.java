@@ -1,50 +1,90 @@
 package dev.superman.server.protocols;
 
-import dev.superman.ED.SynchronizedArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import dev.superman.ED.HashedWheelTimer;
+import dev.superman.server.jfr.AlertAcceptEvent;
+import dev.superman.server.schema.Alert;
 import dev.superman.server.schema.UserProfile;
 import dev.superman.server.schema.UserProfile.AccessLevel;
 
-import java.util.Iterator;
-
 import dev.superman.server.Server;
 import dev.superman.server.protocols.Requests;
 
 /**
  * The Requests class manages and processes various types of requests made by users.
- * It maintains a synchronized list of requests and provides methods to add, remove, and print requests.
- * It also includes a nested requestScan class that continuously scans for requests and broadcasts them using the server.
+ * It keeps the pending requests as typed {@link Alert}s in an {@link AlertStore}, indexed by
+ * request type, and provides methods to add, accept, and print requests.
+ * An alert is claimed atomically by the store, so two users can never accept the same one.
+ * 
+ * <p>Alerts are driven by events instead of a periodic scan: a new alert is announced right
+ * away, and accepting it announces the end. Alert messages only go to the rooms and users
+ * whose access level can accept the alert, through an {@link AlertRouter}. Each pending alert then has
+ * a single timeout on a {@link HashedWheelTimer} for its next event:</p>
+ * <ul>
+ *   <li>a reminder every {@code superman.alerts.reminderMs} (default 10000);</li>
+ *   <li>an escalation after {@code superman.alerts.escalateMs} (default 60000);</li>
+ *   <li>the expiry after {@code superman.alerts.expireMs} (default 600000), which removes it.</li>
+ * </ul>
+ * <p>Nothing runs while there are no pending alerts.</p>
  */
 public class Requests {
     
-    private SynchronizedArrayList<String> requests;
+    private static final long REMINDER_MS = Long.getLong("superman.alerts.reminderMs", 10000);
+    private static final long ESCALATE_MS = Long.getLong("superman.alerts.escalateMs", 60000);
+    private static final long EXPIRE_MS = Long.getLong("superman.alerts.expireMs", 600000);
+    private AlertStore alerts;
+    private Map<Long, AlertLifecycle> lifecycles;
+    private HashedWheelTimer timer;
+    private AlertRouter router;
     private Server server;
     public Requests(Server server) {
         this.server = server;
-        requests = new SynchronizedArrayList<>();
-        new requestScan().start();
+        alerts = new AlertStore();
+        lifecycles = new ConcurrentHashMap<>();
+        timer = new HashedWheelTimer("alert-timer", 100, TimeUnit.MILLISECONDS, 512);
+        router = new AlertRouter(server);
     }
     
     /**
-     * Adds a request to the list of requests.
+     * Adds a request to the pending requests, announces it and schedules its reminders,
+     * escalation and expiry.
      *
      * @param requestType the type of the request
      * @param user the user profile making the request
+     * @return the new alert
+     */
+    public Alert addRequest(RequestType requestType,UserProfile user){
+        Alert alert = alerts.add(requestType, user.getName());
+        router.route(alert, announcement(alert));
+        AlertLifecycle lifecycle = new AlertLifecycle(alert);
+        lifecycles.put(alert.getId(), lifecycle);
+        lifecycle.schedule(0);
+        return alert;
+    }
+
+    /**
+     * Stops the alert timer. Pending alerts are no longer reminded, escalated or expired.
      */
-    public void addRequest(RequestType requestType,UserProfile user){
-        requests.add(user.getName() +"," + requestType); //adiciona o pedido com autor,tipo de pedido
+    public void close() {
+        timer.stop();
     }
 
     /**
-     * Retrieves the list of requests.
+     * Retrieves the number of pending requests.
      *
-     * @return a SynchronizedArrayList containing the requests.
+     * @return the number of alerts waiting to be accepted.
      */
-    public SynchronizedArrayList<String> getRequests() {
-        return requests;
+    public int getPendingCount() {
+        return alerts.size();
     }
 
     /**
-     * Removes a request of a specified type for a given user.
+     * Accepts the oldest pending request of a specified type that the given user did not make.
+     * The request is claimed atomically, so concurrent accepts each end a different request.
+     * Records an AlertAcceptEvent when a JFR recording enables it.
      *
      * @param user The user profile attempting to remove the request.
      * @param requestType The type of request to be removed (e.g., "EVAC", "COMMS", "RES").
@@ -56,6 +96,21 @@ public class Requests {
      *         - "Request not found" if no matching request was found.
      */
     public String removeRequest(UserProfile user,String requestType){
+        AlertAcceptEvent event = new AlertAcceptEvent();
+        event.begin();
+        String outcome = acceptRequest(user, requestType);
+        event.end();
+        if (event.shouldCommit()) {
+            event.room = user.getCurrentRoom();
+            event.user = user.getName();
+            event.type = requestType.toUpperCase();
+            event.outcome = outcome;
+            event.commit();
+        }
+        return outcome;
+    }
+
+    private String acceptRequest(UserProfile user, String requestType) {
         requestType = requestType.toUpperCase();
         RequestType type = null;
         switch (requestType) {
@@ -76,22 +131,20 @@ public class Requests {
             return "Invalid request type";
         }
 
-        Iterator<String> it = requests.iterator();
-        while (it.hasNext()) {
-            String[] parts = it.next().split(",");
-            if (parts[0].equals(user.getName()) && parts[1].equals(type.toString())) {
-                return "You cannout accept your own request";
-            }
-            if (!permissionToAccept(user, type)) {
-                return "You dont have permission to accept this alert";
-            } 
-            if (!parts[0].equals(user.getName()) && parts[1].equals(type.toString())) {
-                it.remove();
-                server.serverBroadcast("[System]: Alert " + type.toString() + " request accepted by " + user.getName());
-                return "Alert ended";
-            }
+        if (!alerts.hasPending(type)) {
+            return "Request not found";
+        }
+        if (!permissionToAccept(user, type)) {
+            return "You dont have permission to accept this alert";
+        }
+        Alert alert = alerts.claim(type, user.getName());
+        if (alert == null) { //só restam pedidos do próprio user
+            return alerts.hasPending(type) ? "You cannout accept your own request" : "Request not found";
         }
-        return "Request not found";
+        AlertLifecycle lifecycle = lifecycles.remove(alert.getId());
+        if (lifecycle != null) lifecycle.cancel();
+        router.routeEnd(alert, "[System]: Alert " + type.toString() + " request accepted by " + user.getName());
+        return "Alert ended";
     }
     
     /**
@@ -102,14 +155,20 @@ public class Requests {
      * @return A string containing all formatted requests.
      */
     public String printRequests() {
-        String result = "";
-        String parts[];
-        Iterator<String> it = requests.iterator();
-        while (it.hasNext()) {
-            parts = it.next().split(",");
-            result += "[System]: Alert " + parts[1] + " requested by "+parts[0] + " needs to be accepted\n";
-        }
-        return result;
+        StringBuilder result = new StringBuilder();
+        for (Alert alert : alerts.getPending())
+            result.append(announcement(alert)).append("\n");
+        return result.toString();
+    }
+
+    /**
+     * Builds the message that announces a pending alert.
+     *
+     * @param alert the pending alert
+     * @return the announcement
+     */
+    private String announcement(Alert alert) {
+        return "[System]: Alert " + alert.getType() + " requested by " + alert.getRequester() + " needs to be accepted";
     }
 
     /**
@@ -120,19 +179,30 @@ public class Requests {
      * @return true if the user has permission to accept the request, false otherwise
      */
     private boolean permissionToAccept(UserProfile userProfile, Requests.RequestType requestType ) {
-        System.out.println(requestType);
+        return canAccept(userProfile.getAccessLevel(), requestType);
+    }
+
+    /**
+     * Determines if an access level can accept a specific request type. This is the single
+     * rule used both by .accept and by the {@link AlertRouter} to pick who receives alerts.
+     *
+     * @param accessLevel the access level to check
+     * @param requestType the type of request
+     * @return true if users with the access level can accept the request, false otherwise
+     */
+    public static boolean canAccept(AccessLevel accessLevel, Requests.RequestType requestType) {
         switch (requestType) {
             case EVACUATION:
-                if(!userProfile.getAccessLevel().equals(AccessLevel.ALTO)) //apenas o alto aprova
+                if(!accessLevel.equals(AccessLevel.ALTO)) //apenas o alto aprova
                     return false;
                 break;   
             case COMMUNICATION:
-                if ((userProfile.getAccessLevel().equals(AccessLevel.CONVIDADO))||(userProfile.getAccessLevel().equals(AccessLevel.BAIXO))) //apenas o alto e medio aprovam
+                if ((accessLevel.equals(AccessLevel.CONVIDADO))||(accessLevel.equals(AccessLevel.BAIXO))) //apenas o alto e medio aprovam
                     return false;
 
                 break;
             case RESOURCES:
-                if (userProfile.getAccessLevel().equals(AccessLevel.CONVIDADO)) //todos aprovam menos o convidado
+                if (accessLevel.equals(AccessLevel.CONVIDADO)) //todos aprovam menos o convidado
                     return false; 
                 break;
         }
@@ -147,34 +217,64 @@ public class Requests {
     }
 
     /**
-     * The requestScan class extends the Thread class and continuously scans for requests.
-     * If there are no requests, it sleeps for 10 seconds before checking again.
-     * If there are requests, it broadcasts them using the server's broadcast method and then sleeps for 10 seconds.
+     * The AlertLifecycle class implements Runnable and drives one pending alert on the
+     * alert timer. Every run performs the events that are due and schedules the next one:
+     * a reminder every REMINDER_MS, a single escalation after ESCALATE_MS and the expiry
+     * after EXPIRE_MS, which removes the alert. A value of 0 disables the event.
      * 
-     * The run method contains an infinite loop that performs the above actions.
-     * 
-     * If the thread is interrupted during sleep, it catches the InterruptedException and prints the stack trace.
+     * It only runs on the timer thread, so its state needs no synchronization. Accepting
+     * the alert cancels its timeout.
      */
-    public class requestScan extends Thread{
-        
-        public void run(){
-            while(true){
-                try {
-                    if (requests.isEmpty()) {
-                        Thread.sleep(10000);
-                    }else{
-                        server.serverBroadcast(printRequests());
-                        Thread.sleep(10000);
-                    }
-                    
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                
-            }
+    private class AlertLifecycle implements Runnable {
+        private final Alert alert;
+        private long nextReminder;
+        private boolean escalated;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        AlertLifecycle(Alert alert) {
+            this.alert = alert;
+            nextReminder = REMINDER_MS;
         }
-    }
-}
 
+        @Override
+        public void run() {
+            if (!alerts.isPending(alert)) {
+                lifecycles.remove(alert.getId(), this);
+                return;
+            }
+            long age = System.currentTimeMillis() - alert.getCreatedAt();
+            if (EXPIRE_MS > 0 && age >= EXPIRE_MS) {
+                lifecycles.remove(alert.getId(), this);
+                if (alerts.remove(alert))
+                    router.routeEnd(alert, "[System]: Alert " + alert.getType() + " requested by " + alert.getRequester() + " expired without being accepted");
+                return;
+            }
+            if (ESCALATE_MS > 0 && !escalated && age >= ESCALATE_MS) {
+                escalated = true;
+                router.route(alert, "[System]: URGENT - Alert " + alert.getType() + " requested by " + alert.getRequester() + " has been waiting for " + age / 1000 + "s");
+            } else if (REMINDER_MS > 0 && age >= nextReminder) {
+                router.route(alert, announcement(alert));
+            }
+            while (REMINDER_MS > 0 && nextReminder <= age) nextReminder += REMINDER_MS;
+            schedule(age);
+        }
 
+        /**
+         * Schedules the next due event, if any.
+         *
+         * @param age the current age of the alert, in milliseconds
+         */
+        void schedule(long age) {
+            long next = Long.MAX_VALUE;
+            if (REMINDER_MS > 0) next = nextReminder;
+            if (ESCALATE_MS > 0 && !escalated) next = Math.min(next, ESCALATE_MS);
+            if (EXPIRE_MS > 0) next = Math.min(next, EXPIRE_MS);
+            if (next != Long.MAX_VALUE) timeout = timer.newTimeout(this, next - age, TimeUnit.MILLISECONDS);
+        }
 
+        void cancel() {
+            HashedWheelTimer.Timeout current = timeout;
+            if (current != null) current.cancel();
+        }
+    }
+}
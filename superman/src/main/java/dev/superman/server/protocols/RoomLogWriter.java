@@ -0,0 +1,295 @@
+package dev.superman.server.protocols;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dev.superman.ED.BufferPool;
+import dev.superman.server.ServerThreads;
+import dev.superman.server.loggerThread.LoggerThread;
+
+/**
+ * The RoomLogWriter class appends the messages of one chat room to its {@link ChatLog},
+ * using group commit: appends made while the previous write is in
+ * progress are coalesced and written together with a single gathering write.
+ *
+ * <p>Durability is chosen with {@code -Dsuperman.chat.durability}:</p>
+ * <ul>
+ *   <li>none (default): append returns once the message is queued; the OS decides when
+ *       the data reaches the disk.</li>
+ *   <li>interval: like none, but the writer forces the file to disk at most every
+ *       {@code superman.chat.fsyncIntervalMs} milliseconds (default 1000) while there is
+ *       unsynced data.</li>
+ *   <li>batch: every batch is forced to disk, and append returns only once the batch
+ *       holding the message is durable.</li>
+ * </ul>
+ *
+ * <p>At most MAX_PENDING_BYTES may wait to be written; appenders block beyond that, so
+ * a stalled disk cannot exhaust the heap. Every message written is counted in the
+ * persisted counter given by the InputHandler.</p>
+ *
+ * <p>Messages received from a room's multicast group arrive in buffers taken from the
+ * {@link BufferPool} of the group's reader and are written as they are, without copying;
+ * the writer returns every such buffer to its pool once its batch has been written.</p>
+ *
+ * <p>The writer's thread is started by its owner with {@link #start()}. When a batch
+ * cannot be written, the writer reopens the log's active segment and writes the batch
+ * again, up to MAX_ATTEMPTS times. If every attempt fails, the writer fails for good: the
+ * error is logged, the queued buffers are returned to their pools, the appenders waiting
+ * for room or for a commit are woken up and every append from then on throws the
+ * error.</p>
+ */
+public class RoomLogWriter implements Runnable {
+    private static final Durability DURABILITY = Durability.valueOf(System.getProperty("superman.chat.durability", "none").toUpperCase());
+    private static final long FSYNC_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("superman.chat.fsyncIntervalMs", 1000));
+    private static final int MAX_PENDING_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 100;
+    private static final long STOP_TIMEOUT_MS = 5000;
+    private final String roomName;
+    private final ChatLog chatLog;
+    private final LongAdder persisted;
+    private final LoggerThread logger;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final Condition committed;
+    private List<ByteBuffer> pending;
+    private List<ByteBuffer> writing;
+    private List<BufferPool> pendingPools;
+    private List<BufferPool> writingPools;
+    private int pendingBytes;
+    private long appendedSequence;
+    private long committedSequence;
+    private boolean closed;
+    private IOException failure;
+    private boolean dirty;
+    private long lastSync;
+    private volatile Thread thread;
+
+    public RoomLogWriter(String roomName, ChatLog chatLog, LongAdder persisted, LoggerThread logger) {
+        this.roomName = roomName;
+        this.chatLog = chatLog;
+        this.persisted = persisted;
+        this.logger = logger;
+        lock = new ReentrantLock();
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+        committed = lock.newCondition();
+        pending = new ArrayList<>();
+        writing = new ArrayList<>();
+        pendingPools = new ArrayList<>();
+        writingPools = new ArrayList<>();
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Starts the writer's thread.
+     */
+    public void start() {
+        thread = ServerThreads.start("chat-writer-" + roomName, this);
+    }
+
+    /**
+     * Queues data to be appended to the room's chat log. In batch durability mode, waits until
+     * the data has been forced to disk.
+     *
+     * @param data the bytes to append
+     * @throws IOException if the writer has failed and no longer writes the log
+     */
+    public void append(byte[] data) throws IOException {
+        append(ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * Queues the remaining bytes of a buffer to be appended to the room's chat log. The writer
+     * owns the buffer from now on and, if it came from a pool, returns it there once written
+     * (or at once if the writer is closed). In batch durability mode, waits until the data has
+     * been forced to disk.
+     *
+     * @param data the bytes to append, ending with a line terminator
+     * @param pool the pool the buffer was taken from, or null
+     * @throws IOException if the writer has failed, in which case the buffer is returned to
+     *         its pool, or if it fails before the data is forced in batch durability mode
+     */
+    public void append(ByteBuffer data, BufferPool pool) throws IOException {
+        lock.lock();
+        try {
+            while (pendingBytes >= MAX_PENDING_BYTES && !closed && failure == null)
+                notFull.awaitUninterruptibly();
+            if (closed || failure != null) {
+                if (pool != null) pool.release(data);
+                if (failure != null) throw new IOException("Chat log of room " + roomName + " failed", failure);
+                return;
+            }
+            pending.add(data);
+            pendingPools.add(pool);
+            pendingBytes += data.remaining();
+            long sequence = ++appendedSequence;
+            notEmpty.signal();
+            if (DURABILITY == Durability.BATCH) {
+                while (committedSequence < sequence && !closed && failure == null)
+                    committed.awaitUninterruptibly();
+                if (committedSequence < sequence && failure != null) throw new IOException("Chat log of room " + roomName + " failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending data, forces it to disk and closes the chat log, waiting up to
+     * STOP_TIMEOUT_MS for the writer's thread to finish.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (thread == null) return;
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for pending data, swaps it with an empty list and writes the whole batch with one
+     * gathering write. Forces the log to disk as required by the durability mode. Fails the
+     * writer if a batch cannot be written after MAX_ATTEMPTS.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                long batchSequence;
+                lock.lock();
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        if (DURABILITY == Durability.INTERVAL && dirty) {
+                            long wait = FSYNC_INTERVAL_NANOS - (System.nanoTime() - lastSync);
+                            if (wait <= 0) break;
+                            notEmpty.awaitNanos(wait);
+                        } else {
+                            notEmpty.await();
+                        }
+                    }
+                    if (pending.isEmpty() && closed) break;
+                    List<ByteBuffer> batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    List<BufferPool> pools = pendingPools;
+                    pendingPools = writingPools;
+                    writingPools = pools;
+                    pendingBytes = 0;
+                    batchSequence = appendedSequence;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                writeWithRetry();
+                lock.lock();
+                try {
+                    committedSequence = batchSequence;
+                    committed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (dirty) chatLog.force();
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new InterruptedIOException("Chat writer of room " + roomName + " interrupted"));
+        } finally {
+            chatLog.close();
+        }
+    }
+
+    /**
+     * Writes the batch, reopening the log's active segment and trying again after a failure.
+     * After the last attempt the segment is reopened once more, so that it ends with the last
+     * record written in full.
+     */
+    private void writeWithRetry() throws IOException, InterruptedException {
+        IOException error = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                if (error != null) chatLog.reopen();
+                writeBatch();
+                return;
+            } catch (IOException e) {
+                if (error == null) error = e;
+                else error.addSuppressed(e);
+                logger.warning("Chat log of room " + roomName + " failed writing (attempt " + attempt + " of " + MAX_ATTEMPTS + "): " + e.getMessage());
+                if (attempt < MAX_ATTEMPTS) Thread.sleep(RETRY_DELAY_MS * attempt);
+            }
+        }
+        try {
+            chatLog.reopen(); //descarta o que a última tentativa deixou a meio
+        } catch (IOException e) {
+            error.addSuppressed(e);
+        }
+        throw error;
+    }
+
+    /**
+     * Puts the writer in its failed state: releases every queued buffer and wakes up every
+     * appender, which then gets the error.
+     */
+    private void fail(IOException e) {
+        logger.log("Chat log of room " + roomName + " failed, its messages are no longer written: " + e);
+        lock.lock();
+        try {
+            failure = e;
+            release(writing, writingPools);
+            release(pending, pendingPools);
+            pendingBytes = 0;
+            notFull.signalAll();
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void release(List<ByteBuffer> buffers, List<BufferPool> pools) {
+        for (int i = 0; i < buffers.size(); i++) {
+            BufferPool pool = pools.get(i);
+            if (pool != null) pool.release(buffers.get(i));
+        }
+        buffers.clear();
+        pools.clear();
+    }
+
+    private void writeBatch() throws IOException {
+        if (!writing.isEmpty()) {
+            chatLog.write(writing);
+            persisted.add(writing.size());
+            release(writing, writingPools);
+            dirty = true;
+        }
+        if (DURABILITY == Durability.BATCH || (DURABILITY == Durability.INTERVAL && System.nanoTime() - lastSync >= FSYNC_INTERVAL_NANOS)) {
+            if (dirty) chatLog.force();
+            dirty = false;
+            lastSync = System.nanoTime();
+        }
+    }
+
+    /**
+     * The durability policies of the room files.
+     */
+    public enum Durability {
+        NONE, INTERVAL, BATCH
+    }
+}
@@ -0,0 +1,167 @@
+package dev.superman.server.protocols;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The UserRegistry class keeps an in-memory index of the users stored in the user
+ * database file, so that logins and registrations do not scan the file.
+ *
+ * <p>The file is read once when the registry is created. Every line has the format
+ * {@code username,passwordHash,accessLevel}; malformed lines are skipped and, like the
+ * previous line-by-line lookup, the first entry of a duplicated username wins.</p>
+ *
+ * <p>New users are written through: they are added to the index first, which is atomic
+ * per username, and then appended to the file. Two concurrent registrations of the same
+ * username can therefore never both succeed. Password hashes are updated in the index and
+ * the file is rewritten through a temporary file, so a crash never leaves it half written.</p>
+ */
+public class UserRegistry {
+    private final Path userFile;
+    private final Map<String, UserEntry> users;
+    private final ReentrantLock fileLock;
+
+    public UserRegistry(String userFile) {
+        this.userFile = Paths.get(userFile);
+        users = new ConcurrentHashMap<>();
+        fileLock = new ReentrantLock();
+        load();
+    }
+
+    /**
+     * Finds the entry of a user.
+     *
+     * @param username the username to look up
+     * @return the user's entry, or null if the user does not exist
+     */
+    public UserEntry find(String username) {
+        return users.get(username);
+    }
+
+    /**
+     * Checks if a user exists.
+     *
+     * @param username the username to check for existence
+     * @return true if the user exists, false otherwise
+     */
+    public boolean exists(String username) {
+        return users.containsKey(username);
+    }
+
+    /**
+     * Registers a new user in the index and appends it to the user database file.
+     *
+     * @param username the username of the new user
+     * @param passwordHash the BCrypt hash of the user's password
+     * @param accessLevel the access level of the new user
+     * @return true if the user was registered, false if the username already exists
+     * @throws IOException if the user could not be written to the file; the user is then removed from the index
+     */
+    public boolean register(String username, String passwordHash, String accessLevel) throws IOException {
+        UserEntry entry = new UserEntry(username, passwordHash, accessLevel);
+        if (users.putIfAbsent(username, entry) != null) return false;
+        fileLock.lock();
+        try {
+            String userEntry = username + "," + passwordHash + "," + accessLevel + "\n";
+            Files.write(userFile, userEntry.getBytes(), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+        } catch (IOException e) {
+            users.remove(username, entry);
+            throw e;
+        } finally {
+            fileLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the password hash of a user, for example after a BCrypt cost change.
+     * Nothing is changed if the entry was replaced in the meantime.
+     *
+     * @param user the entry that was used to verify the password
+     * @param passwordHash the new BCrypt hash of the user's password
+     */
+    public void updatePasswordHash(UserEntry user, String passwordHash) {
+        UserEntry updated = new UserEntry(user.getUsername(), passwordHash, user.getAccessLevel());
+        if (!users.replace(user.getUsername(), user, updated)) return;
+        fileLock.lock();
+        try {
+            List<String> lines = Files.readAllLines(userFile);
+            for (int i = 0; i < lines.size(); i++) {
+                String[] parts = lines.get(i).split(",");
+                if (parts.length == 3 && parts[0].equals(user.getUsername())) {
+                    lines.set(i, user.getUsername() + "," + passwordHash + "," + user.getAccessLevel());
+                    break;
+                }
+            }
+            Path temporaryFile = userFile.resolveSibling(userFile.getFileName() + ".tmp");
+            Files.write(temporaryFile, lines);
+            Files.move(temporaryFile, userFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of registered users.
+     *
+     * @return the number of users in the index
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Loads every valid line of the user database file into the index.
+     */
+    private void load() {
+        if (!Files.exists(userFile)) return;
+        try (BufferedReader fileReader = Files.newBufferedReader(userFile)) {
+            String line;
+            while ((line = fileReader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length == 3)
+                    users.putIfAbsent(parts[0], new UserEntry(parts[0], parts[1], parts[2]));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A user stored in the registry.
+     */
+    public static class UserEntry {
+        private final String username;
+        private final String passwordHash;
+        private final String accessLevel;
+
+        public UserEntry(String username, String passwordHash, String accessLevel) {
+            this.username = username;
+            this.passwordHash = passwordHash;
+            this.accessLevel = accessLevel;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getPasswordHash() {
+            return passwordHash;
+        }
+
+        public String getAccessLevel() {
+            return accessLevel;
+        }
+    }
+}
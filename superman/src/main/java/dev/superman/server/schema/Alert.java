@@ -0,0 +1,96 @@
+package dev.superman.server.schema;
+
+import dev.superman.server.protocols.Requests.RequestType;
+
+/**
+ * Represents an alert requested by a user and waiting to be accepted.
+ * Alerts are immutable; accepting one removes it from the AlertStore.
+ */
+public class Alert {
+
+    /**
+     * The unique id of the alert, in order of creation.
+     */
+    private final long id;
+
+    /**
+     * The type of the alert.
+     */
+    private final RequestType type;
+
+    /**
+     * The name of the user who requested the alert.
+     */
+    private final String requester;
+
+    /**
+     * The time the alert was requested, in milliseconds since the epoch.
+     */
+    private final long createdAt;
+
+    /**
+     * Constructs an Alert.
+     *
+     * @param id the unique id of the alert
+     * @param type the type of the alert
+     * @param requester the name of the user who requested the alert
+     * @param createdAt the time the alert was requested, in milliseconds since the epoch
+     */
+    public Alert(long id, RequestType type, String requester, long createdAt) {
+        this.id = id;
+        this.type = type;
+        this.requester = requester;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Gets the unique id of the alert.
+     *
+     * @return the id of the alert
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the type of the alert.
+     *
+     * @return the type of the alert
+     */
+    public RequestType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the name of the user who requested the alert.
+     *
+     * @return the requester's name
+     */
+    public String getRequester() {
+        return requester;
+    }
+
+    /**
+     * Gets the time the alert was requested.
+     *
+     * @return the creation time, in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Returns a string representation of the alert.
+     *
+     * @return a string representation of the alert
+     */
+    @Override
+    public String toString() {
+        return "Alert{" +
+                "id=" + id +
+                ", type=" + type +
+                ", requester='" + requester + '\'' +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -0,0 +1,325 @@
+package dev.superman.server.tcp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import dev.superman.server.loggerThread.LoggerThread;
+import dev.superman.wire.FrameReader;
+import dev.superman.wire.Wire;
+
+/**
+ * ReactorSession holds the state of one non-blocking client connection owned by a
+ * {@link TCPReactor}.
+ *
+ * <p>Incoming bytes are copied from the reactor's shared read buffer into a small
+ * per-session line buffer. Every complete line is decoded and passed to the
+ * {@link TCPConnection}: the first line is the client's temporary name, the others are
+ * commands. Lines end on '\n', '\r' or "\r\n", like {@link java.io.BufferedReader#readLine()}.</p>
+ *
+ * <p>If the connection starts with {@link Wire#MAGIC}, the client speaks the binary
+ * protocol instead: once the version is negotiated, the bytes are decoded by a
+ * {@link FrameReader} that keeps partial frames between reads, and the TCPConnection's
+ * replies are encoded by a {@link SessionWriter.Binary} into frames queued on the session.</p>
+ *
+ * <p>The reactor only decodes: the commands, which may wait on password hashing, chat logs
+ * or locks, run on the TCPHandler's worker pool through a {@link SerialExecutor}, one at a
+ * time and in the order they arrived. When a client sends commands faster than they run and
+ * MAX_PENDING_COMMANDS are queued, the session stops reading until the queue falls back to
+ * RESUME_COMMANDS; the end of the session is queued after its last command.</p>
+ *
+ * <p>Text replies written by the TCPConnection go through a PrintWriter backed by a
+ * {@link ChannelWriter}, which encodes each flushed chunk once and queues it for the
+ * reactor to write.</p>
+ */
+public final class ReactorSession {
+    private static final int INITIAL_LINE_SIZE = 128;
+    private static final int MAX_LINE_SIZE = 64 * 1024;
+    private static final int MAX_PENDING_COMMANDS = 64;
+    private static final int RESUME_COMMANDS = 16;
+    private static final int UNKNOWN = 0, TEXT = 1, HELLO_VERSION = 2, HELLO_END = 3, BINARY = 4; //protocolo da sessão
+    private final SocketChannel channel;
+    private final TCPReactor reactor;
+    private final TCPConnection tcpConnection;
+    private final SerialExecutor commands;
+    private final LoggerThread logger;
+    private final Queue<ByteBuffer> outbound;
+    private final AtomicBoolean flushScheduled;
+    private SelectionKey key;
+    private byte[] line;
+    private int lineLength;
+    private boolean skipLineFeed;
+    private boolean opened;
+    private int protocol;
+    private int version;
+    private FrameReader frames;
+    private volatile boolean readPaused;
+    private volatile boolean closed;
+
+    public ReactorSession(SocketChannel channel, TCPReactor reactor, TCPHandler tcpHandler, LoggerThread logger) throws IOException {
+        this.channel = channel;
+        this.reactor = reactor;
+        this.logger = logger;
+        commands = new SerialExecutor(tcpHandler.getWorkers());
+        channel.configureBlocking(false);
+        outbound = new ConcurrentLinkedQueue<>();
+        flushScheduled = new AtomicBoolean(false);
+        line = new byte[INITIAL_LINE_SIZE];
+        tcpConnection = new TCPConnection(tcpHandler, logger, new PrintWriter(new ChannelWriter(), true), () -> reactor.requestClose(this));
+    }
+
+    /**
+     * Retrieves the TCPConnection that handles the commands of this session.
+     *
+     * @return the TCPConnection of this session
+     */
+    public TCPConnection getTcpConnection() {
+        return tcpConnection;
+    }
+
+    /**
+     * Registers the channel for reads. Called on the reactor thread.
+     *
+     * @param selector the reactor's selector
+     * @throws IOException if the channel cannot be registered
+     */
+    void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+        if (!outbound.isEmpty()) write();
+    }
+
+    /**
+     * Reads the available bytes into the shared buffer and dispatches every complete line.
+     * Closes the session when the client disconnects.
+     *
+     * @param buffer the reactor's reusable read buffer
+     */
+    void read(ByteBuffer buffer) {
+        try {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (protocol == BINARY) {
+                    if (frames.decode(buffer)) dispatch(frames);
+                    continue;
+                }
+                byte b = buffer.get();
+                if (protocol != TEXT && negotiate(b)) continue;
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (b == '\n') continue;
+                }
+                if (b == '\n' || b == '\r') {
+                    skipLineFeed = b == '\r';
+                    dispatch(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+                    lineLength = 0;
+                } else {
+                    append(b);
+                }
+            }
+            if (commands.pending() >= MAX_PENDING_COMMANDS) { //o cliente envia mais depressa do que os comandos correm
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+    }
+
+    /**
+     * Writes as much pending output as the channel accepts. If the socket buffer is full,
+     * the session waits for the channel to become writable again. Also resumes reading once
+     * enough queued commands have run.
+     */
+    void write() {
+        flushScheduled.set(false);
+        if (closed || key == null) return;
+        if (readPaused && commands.pending() <= RESUME_COMMANDS) readPaused = false;
+        int reading = readPaused ? 0 : SelectionKey.OP_READ;
+        try {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(reading | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outbound.poll();
+            }
+            key.interestOps(reading);
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the channel, discards any pending output and ends the connection's session
+     * once the commands already queued have run.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (key != null) key.cancel();
+        outbound.clear();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        commands.execute(tcpConnection::disconnected);
+    }
+
+    private void dispatch(String input) {
+        if (!opened) {
+            opened = true;
+            InetSocketAddress remoteAddress = remoteAddress();
+            submit(() -> {
+                tcpConnection.open(input, remoteAddress);
+                return TCPConnection.DONE;
+            });
+        } else {
+            submit(() -> tcpConnection.handleInput(input));
+        }
+    }
+
+    private void dispatch(FrameReader frame) throws IOException {
+        if (!opened) {
+            if (frame.opcode() != Wire.OPEN) throw new IOException("Expected OPEN, got opcode " + frame.opcode());
+            opened = true;
+            String temporaryName = frame.getString();
+            InetSocketAddress remoteAddress = remoteAddress();
+            submit(() -> {
+                tcpConnection.open(temporaryName, remoteAddress);
+                return TCPConnection.DONE;
+            });
+        } else {
+            String[] parts = TCPConnection.commandOf(frame); //o FrameReader é reutilizado na próxima frame
+            submit(() -> tcpConnection.handleCommand(parts));
+        }
+    }
+
+    /**
+     * Queues a command to run on the worker pool after the ones before it. A command that
+     * waits for the password hashing pool returns a future, and the session's next command
+     * runs once it completes. A command that fails closes the session, as a failure on the
+     * reactor did.
+     */
+    private void submit(Supplier<CompletableFuture<Void>> command) {
+        commands.executeAsync(() -> {
+            if (closed) return null;
+            try {
+                CompletableFuture<Void> running = command.get();
+                if (!running.isDone()) return running.whenComplete((result, error) -> commandDone(error));
+                running.join(); //lança a exceção de um comando que falhou
+            } catch (RuntimeException e) {
+                commandDone(e);
+                return null;
+            }
+            commandDone(null);
+            return null;
+        });
+    }
+
+    private void commandDone(Throwable error) {
+        if (error != null) {
+            logger.log("TCP command failed: " + error);
+            reactor.requestClose(this);
+        }
+        if (readPaused && commands.pending() <= RESUME_COMMANDS && flushScheduled.compareAndSet(false, true))
+            reactor.requestFlush(this);
+    }
+
+    /**
+     * Chooses the protocol from the first bytes: MAGIC, a version and '\n' switch the
+     * session to the binary protocol, any other first byte starts a text session.
+     *
+     * @return true if the byte was consumed, false if it starts a text session
+     */
+    private boolean negotiate(byte b) throws IOException {
+        switch (protocol) {
+            case UNKNOWN:
+                protocol = b == Wire.MAGIC ? HELLO_VERSION : TEXT;
+                return protocol != TEXT;
+            case HELLO_VERSION:
+                version = b & 0xFF;
+                if (version < 1) throw new IOException("Invalid protocol version " + version);
+                protocol = HELLO_END;
+                return true;
+            default:
+                if (b != '\n') throw new IOException("Malformed protocol negotiation");
+                send(ByteBuffer.wrap(new byte[] {Wire.MAGIC, (byte) Math.min(version, Wire.VERSION)}));
+                tcpConnection.setWriter(new SessionWriter.Binary(frame -> send(frame.copy())));
+                frames = new FrameReader();
+                protocol = BINARY;
+                return true;
+        }
+    }
+
+    private InetSocketAddress remoteAddress() {
+        try {
+            return (InetSocketAddress) channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void append(byte b) throws IOException {
+        if (lineLength == line.length) {
+            if (line.length >= MAX_LINE_SIZE) throw new IOException("Line too long");
+            line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_SIZE));
+        }
+        line[lineLength++] = b;
+    }
+
+    private void send(ByteBuffer buffer) {
+        if (closed) return;
+        outbound.add(buffer);
+        if (flushScheduled.compareAndSet(false, true)) reactor.requestFlush(this);
+    }
+
+    /**
+     * ChannelWriter is a private inner class that extends Writer.
+     * It collects the characters written by the PrintWriter and, on every flush,
+     * encodes them to UTF-8 and queues them on the session.
+     */
+    private class ChannelWriter extends Writer {
+        private final StringBuilder pending = new StringBuilder();
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            synchronized (lock) {
+                pending.append(cbuf, off, len);
+            }
+        }
+
+        @Override
+        public void flush() {
+            synchronized (lock) {
+                if (pending.length() == 0) return;
+                ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending));
+                pending.setLength(0);
+                send(encoded);
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
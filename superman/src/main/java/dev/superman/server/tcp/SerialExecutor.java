@@ -0,0 +1,111 @@
+package dev.superman.server.tcp;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * SerialExecutor runs the tasks of one session one at a time and in the order they were
+ * submitted, on threads borrowed from a shared executor.
+ *
+ * <p>Tasks are queued and, when none is running, a drain is handed to the shared executor;
+ * it runs up to BATCH tasks and hands itself over again if more are queued, so one busy
+ * session cannot keep a worker from the others. Tasks should catch their own exceptions;
+ * one that throws anyway does not stop the queue: the exception reaches the executor's
+ * thread and the tasks after it still run.</p>
+ *
+ * <p>A task submitted with {@link #executeAsync(Supplier)} may return a future instead of
+ * waiting, for example on the password hashing pool: the next task starts once that future
+ * completes, and no thread is held meanwhile.</p>
+ *
+ * <p>If the shared executor has been shut down, the tasks are run on the submitting thread,
+ * so the last tasks of a session, such as ending it, still run while the server stops.</p>
+ */
+final class SerialExecutor implements Executor {
+    private static final int BATCH = 16;
+    private final Executor workers;
+    private final Queue<Supplier<CompletableFuture<?>>> tasks;
+    private final AtomicBoolean scheduled;
+    private final AtomicInteger pending;
+
+    SerialExecutor(Executor workers) {
+        this.workers = workers;
+        tasks = new ConcurrentLinkedQueue<>();
+        scheduled = new AtomicBoolean(false);
+        pending = new AtomicInteger();
+    }
+
+    /**
+     * Queues a task after the ones already submitted.
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        executeAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Queues a task after the ones already submitted. The next task starts when the future
+     * returned by this one completes, normally or not.
+     *
+     * @param task the task to run, which returns a future or null if it has finished
+     */
+    void executeAsync(Supplier<CompletableFuture<?>> task) {
+        pending.incrementAndGet();
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * Retrieves the number of tasks submitted and not yet started.
+     *
+     * @return the number of queued tasks
+     */
+    int pending() {
+        return pending.get();
+    }
+
+    private void schedule() {
+        if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+        resume();
+    }
+
+    private void resume() {
+        try {
+            workers.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            drain(); //o servidor está a parar
+        }
+    }
+
+    private void drain() {
+        boolean waiting = false;
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Supplier<CompletableFuture<?>> task = tasks.poll();
+                if (task == null) break;
+                pending.decrementAndGet();
+                CompletableFuture<?> running = task.get();
+                if (running != null && !running.isDone()) { //continua quando a tarefa acabar, sem ocupar a thread
+                    waiting = true;
+                    running.whenComplete((result, error) -> resume());
+                    return;
+                }
+            }
+        } finally {
+            if (!waiting) { //também depois de uma tarefa que lançou uma exceção
+                scheduled.set(false);
+                schedule(); //pode ter chegado outra tarefa depois do último poll
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package dev.superman.server.tcp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dev.superman.wire.FrameWriter;
+import dev.superman.wire.Wire;
+
+/**
+ * SessionWriter sends a {@link TCPConnection}'s replies to its client in the protocol the
+ * client chose when it connected: text lines, or frames of the binary protocol described in
+ * {@link Wire}. The connection only says what to send; the writer decides how.
+ *
+ * <p>Replies are sent from the connection's own thread and from the threads that route
+ * alerts and notifications, so implementations must be thread-safe.</p>
+ */
+interface SessionWriter {
+
+    /**
+     * Sends a message for the user, which may hold several lines.
+     *
+     * @param message the message
+     */
+    void text(String message);
+
+    /**
+     * Tells the client the user's name after a login or logout.
+     *
+     * @param name the name of the user, or the temporary name after a logout
+     * @param message a message for the user
+     */
+    void userInfo(String name, String message);
+
+    /**
+     * Tells the client the multicast group of the room the user is in.
+     *
+     * @param address the address of the group
+     * @param port the port of the group
+     */
+    void chat(String address, int port);
+
+    /**
+     * Tells the client to leave its room's multicast group.
+     */
+    void chatOff();
+
+    /**
+     * Sends a heartbeat, which the client answers with .pong.
+     */
+    void ping();
+
+    /**
+     * Writes the text protocol: one line per reply, with the spaces of a userinfo message
+     * replaced by underscores.
+     */
+    class Text implements SessionWriter {
+        private final PrintWriter out;
+
+        Text(PrintWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void text(String message) {
+            out.println(message);
+        }
+
+        @Override
+        public void userInfo(String name, String message) {
+            out.println("userinfo " + name + " " + message.replace(' ', '_'));
+        }
+
+        @Override
+        public void chat(String address, int port) {
+            out.println("chat " + address + " " + port);
+        }
+
+        @Override
+        public void chatOff() {
+            out.println("chat off");
+        }
+
+        @Override
+        public void ping() {
+            out.println("ping");
+        }
+    }
+
+    /**
+     * Writes frames of the binary protocol. Every reply is encoded into one reused
+     * {@link FrameWriter} under the writer's lock and passed to the sink. A message too long
+     * for one frame is sent in several TEXT frames, split between lines where possible.
+     */
+    class Binary implements SessionWriter {
+        private static final int MAX_TEXT_CHARS = (Wire.MAX_FRAME - 8) / 3; //3 bytes UTF-8 por char no pior caso, mais opcode e tamanho
+        private final FrameWriter frames;
+        private final Sink sink;
+        private final ReentrantLock lock;
+
+        Binary(Sink sink) {
+            this.sink = sink;
+            frames = new FrameWriter();
+            lock = new ReentrantLock();
+        }
+
+        @Override
+        public void text(String message) {
+            lock.lock();
+            try {
+                int start = 0;
+                while (message.length() - start > MAX_TEXT_CHARS) {
+                    int end = message.lastIndexOf('\n', start + MAX_TEXT_CHARS);
+                    if (end >= start) { //parte na última linha que cabe, sem o '\n'
+                        send(frames.begin(Wire.TEXT).putString(message.substring(start, end)));
+                        start = end + 1;
+                        continue;
+                    }
+                    end = start + MAX_TEXT_CHARS;
+                    if (Character.isHighSurrogate(message.charAt(end - 1))) end--; //não separa um par de surrogates
+                    send(frames.begin(Wire.TEXT).putString(message.substring(start, end)));
+                    start = end;
+                }
+                send(frames.begin(Wire.TEXT).putString(start == 0 ? message : message.substring(start)));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void userInfo(String name, String message) {
+            lock.lock();
+            try {
+                send(frames.begin(Wire.USERINFO).putString(name).putString(message));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void chat(String address, int port) {
+            lock.lock();
+            try {
+                send(frames.begin(Wire.CHAT).putString(address).putVarInt(port));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void chatOff() {
+            lock.lock();
+            try {
+                send(frames.begin(Wire.CHAT_OFF));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void ping() {
+            lock.lock();
+            try {
+                send(frames.begin(Wire.PING));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void send(FrameWriter frame) {
+            try {
+                sink.write(frame.end());
+            } catch (IOException ignored) {} //a ligação caiu, o leitor da sessão fecha-a
+        }
+
+        /**
+         * Receives every frame once it is complete: a blocking connection writes it to its
+         * socket, a reactor session copies it with {@link FrameWriter#copy()} and queues the
+         * {@link ByteBuffer}.
+         */
+        interface Sink {
+            void write(FrameWriter frame) throws IOException;
+        }
+    }
+}
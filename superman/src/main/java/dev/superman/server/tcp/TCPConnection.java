@@ -1,21 +1,33 @@
 package dev.superman.server.tcp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+import dev.superman.ED.MpscQueue;
+import dev.superman.server.ServerThreads;
 import dev.superman.server.loggerThread.LoggerThread;
 import dev.superman.server.protocols.InputHandler;
 import dev.superman.server.schema.UserProfile;
 import dev.superman.server.schema.UserProfile.AccessLevel;
+import dev.superman.wire.FrameReader;
+import dev.superman.wire.Wire;
 
 /**
  * TCPConnection class handles the TCP connection for a client.
- * It extends the Thread class to handle client communication in a separate thread.
+ * It implements Runnable so the TCPHandler can run each client on its own platform
+ * or virtual thread (see {@link dev.superman.server.ServerThreads}).
  * 
  * This class manages user login, registration, and various commands such as joining rooms,
  * viewing profile, logging out, and sending notifications.
@@ -24,38 +36,206 @@ import dev.superman.server.schema.UserProfile.AccessLevel;
  * - tcpHandler: Handles TCP-related operations.
  * - inputHandler: Handles input-related operations.
  * - clientSocket: The socket for the client connection.
- * - in: BufferedReader for reading input from the client.
- * - out: PrintWriter for sending output to the client.
+ * - input, in: the client's stream and, in the text protocol, the BufferedReader reading its lines.
+ * - out: SessionWriter sending replies in the protocol the client chose (see {@link SessionWriter}).
  * - userProfile: Stores user profile information.
  * 
- * Constructor:
+ * Constructors:
  * - TCPConnection(Socket clientSocket, TCPHandler tcpHandler): Initializes the connection with the client socket and TCP handler.
+ * - TCPConnection(TCPHandler tcpHandler, LoggerThread logger, PrintWriter out): Initializes a connection driven by a TCPReactor.
  * 
  * Methods:
  * - run(): Handles the main communication loop with the client, processing various commands.
+ * - handleInput(String input): Processes a single command line, shared by the thread and reactor modes.
+ * - handleFrame(FrameReader frame): Processes a command frame of the binary protocol (see {@link Wire}).
+ * - commandOf(FrameReader frame): Reads the command of a frame, for a reactor that runs it on a worker.
+ * - handleCommand(String[] parts): Runs a command split into its name and arguments, for both protocols.
+ * - disconnected(): Removes the connection and its logged in user when the client disconnects.
+ * - close(): Closes the client's socket or channel, used by the TCPHandler's session reaper.
+ * - send(String message): Queues a line for the client, used to route alerts.
+ * - getAccessLevel(), getCurrentRoom(): Return the access level and room of the user.
  * - getUsername(): Returns the username of the connected user.
+ * - loadHistory(String room, int count, long before): Prints a page of a room's history.
  */
-public class TCPConnection extends Thread {
+public class TCPConnection implements Runnable {
+    static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final int MAX_HISTORY = 100;
     private TCPHandler tcpHandler;
     private InputHandler inputHandler;
     private Socket clientSocket;
+    private BufferedInputStream input;
     private BufferedReader in;
-    private PrintWriter out;
+    private volatile SessionWriter out;
     private UserProfile userProfile;
+    private String clientAddress;
     private LoggerThread logger;
+    private Closeable transport;
+    private Executor continuations;
+    private Executor notifications;
+    private MpscQueue<Runnable> outbox;
+    private Thread notifierThread;
+    private volatile long lastActivity;
 
     public TCPConnection(Socket clientSocket, TCPHandler tcpHandler, LoggerThread logger) throws IOException {
         this.tcpHandler = tcpHandler;
         this.inputHandler = tcpHandler.getInputHandler();
         this.clientSocket = clientSocket;
         this.logger = logger;
-        in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        out = new PrintWriter(clientSocket.getOutputStream(), true);
+        input = new BufferedInputStream(clientSocket.getInputStream());
+        out = new SessionWriter.Text(new PrintWriter(clientSocket.getOutputStream(), true));
+        transport = clientSocket;
+        outbox = new MpscQueue<>();
+        notifications = outbox::add; //a escrita no socket pode bloquear, escreve-as o notifier
+        lastActivity = System.nanoTime();
     }
 
     /**
-     * Handles the TCP connection for a user. This method is executed when the thread is started.
-     * It reads input from the user, processes commands, and sends responses back to the user.
+     * Creates a connection owned by a {@link TCPReactor} instead of its own thread.
+     * The reactor's session runs the client's lines through {@link #open(String, InetSocketAddress)},
+     * {@link #handleInput(String)} and {@link #handleCommand(String[])} on the worker pool,
+     * one at a time, and replies are written to the given writer until the
+     * client negotiates the binary protocol (see {@link #setWriter(SessionWriter)}).
+     *
+     * @param tcpHandler the TCP handler that accepted the connection
+     * @param logger the logger thread
+     * @param out the writer used to send replies to the client
+     * @param transport closes the client's channel on the reactor thread
+     */
+    TCPConnection(TCPHandler tcpHandler, LoggerThread logger, PrintWriter out, Closeable transport) {
+        this.tcpHandler = tcpHandler;
+        this.inputHandler = tcpHandler.getInputHandler();
+        this.logger = logger;
+        this.out = new SessionWriter.Text(out);
+        this.transport = transport;
+        continuations = tcpHandler.getWorkers();
+        notifications = Runnable::run; //as respostas só são postas na fila da sessão
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Handles the TCP connection for a user. This method is executed when the connection's thread is started.
+     * If the first byte is {@link Wire#MAGIC}, the client speaks the binary protocol and
+     * the session continues in {@link #runBinary(InetSocketAddress)}. Otherwise it reads the
+     * temporary name sent by the client, then reads commands line by line and passes each
+     * one to {@link #handleInput(String)} until the client disconnects.
+     */
+    @Override
+    public void run() {
+        notifierThread = ServerThreads.start("tcp-notify", new NotifierThread());
+        try {
+            InetSocketAddress remoteAddress = (InetSocketAddress) clientSocket.getRemoteSocketAddress();
+            input.mark(1);
+            if (input.read() == (Wire.MAGIC & 0xFF)) {
+                runBinary(remoteAddress);
+                return;
+            }
+            input.reset();
+            in = new BufferedReader(new InputStreamReader(input));
+            open(in.readLine(), remoteAddress);
+            String line;
+            while ((line = in.readLine()) != null)
+                handleInput(line);
+        } catch (IOException ignored) {
+        } finally {
+            close();
+            disconnected();
+            notifierThread.interrupt();
+        }
+    }
+
+    /**
+     * Finishes the binary protocol's negotiation, answering with the version both sides
+     * will use, then reads the OPEN frame with the temporary name and passes every other
+     * frame to {@link #handleFrame(FrameReader)} until the client disconnects.
+     *
+     * @param remoteAddress the remote address of the client
+     * @throws IOException if the connection fails or the client sends a malformed frame
+     */
+    private void runBinary(InetSocketAddress remoteAddress) throws IOException {
+        int version = input.read();
+        if (version < 1 || input.read() != '\n') return; //negociação inválida
+        OutputStream output = new BufferedOutputStream(clientSocket.getOutputStream());
+        output.write(new byte[] {Wire.MAGIC, (byte) Math.min(version, Wire.VERSION)});
+        output.flush();
+        setWriter(new SessionWriter.Binary(frame -> {
+            frame.writeTo(output);
+            output.flush();
+        }));
+        FrameReader frames = new FrameReader();
+        if (!frames.read(input) || frames.opcode() != Wire.OPEN) return;
+        open(frames.getString(), remoteAddress);
+        while (frames.read(input))
+            handleFrame(frames);
+    }
+
+    /**
+     * Replaces the writer of the replies, once the client has negotiated the binary protocol.
+     *
+     * @param writer the writer for the chosen protocol
+     */
+    void setWriter(SessionWriter writer) {
+        out = writer;
+    }
+
+    /**
+     * Ends the session when the client disconnects: a logged in user is removed from the
+     * online users and the connection is removed from the TCPHandler.
+     */
+    void disconnected() {
+        if (userProfile != null && userProfile.isLoggedIn()) {
+            tcpHandler.logout(userProfile.getName(), this);
+            userProfile.setLoggedIn(false);
+            logger.info(userProfile.getName() + " disconnected");
+        }
+        tcpHandler.removeConnection(this);
+    }
+
+    /**
+     * Closes the client's socket or channel. The session then ends through
+     * {@link #disconnected()} on the thread that owns the connection.
+     */
+    public void close() {
+        try {
+            transport.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Sends a heartbeat to the client, which answers with .pong. The caller does not wait
+     * for the socket; see {@link #send(String)}.
+     */
+    void ping() {
+        notifications.execute(out::ping);
+    }
+
+    /**
+     * Returns how long the client has not sent anything.
+     *
+     * @param now the current time, from System.nanoTime()
+     * @return the idle time in nanoseconds
+     */
+    long getIdleNanos(long now) {
+        return now - lastActivity;
+    }
+
+    /**
+     * Starts the session with the temporary name sent by the client as its first line
+     * and greets the user.
+     *
+     * @param temporaryName the temporary name generated by the client
+     * @param remoteAddress the remote address of the client
+     */
+    void open(String temporaryName, InetSocketAddress remoteAddress) {
+        userProfile = new UserProfile(temporaryName);
+        userProfile.setName(userProfile.getTemporaryName());
+        userProfile.setLoggedIn(false);
+        clientAddress = remoteAddress != null ? remoteAddress.getAddress().getHostAddress() : "unknown";
+        System.out.println("Connection established with " + userProfile.getName() + " on " + (remoteAddress != null ? remoteAddress.getAddress() + ":" + remoteAddress.getPort() : clientAddress));
+        out.text("Welcome to the chat server " + userProfile.getName() + "\nPlease .login, .register or .help");
+    }
+
+    /**
+     * Processes a single command line sent by the client.
      * 
      * Commands available before login:
      * - .login <username> <password>: Logs in the user with the provided credentials.
@@ -66,195 +246,347 @@ public class TCPConnection extends Thread {
      * - .profile: Displays the user's profile information.
      * - .logout: Logs out the user.
      * - .join <convidado/baixo/medio/alto>: Joins the specified chat room.
+     * - .history <room> <count> [before]: Displays up to count messages of a room sent before
+     *   the given sequence number, or the latest ones.
      * - .help: Displays the available commands.
      * - .online: Displays the list of online users.
      * - .request <evac/comms/res>: Sends a request for evacuation, communication, or resources.
      * - .accept <evac/comms/res>: Accepts a request for evacuation, communication, or resources.
      * - .notify <message>: Sends a notification message to all groups.
-     * 
-     * The method handles user authentication, command parsing, and interaction with the input handler
-     * and TCP handler to manage user sessions and chat rooms.
+     * - .stats: Displays the server's metrics, for ALTO users only.
+     *
+     * Any line, including the .pong answer to a heartbeat, marks the connection as active.
+     *
+     * @param input the line received from the client
+     * @return a future completed once the command has replied; see {@link #handleCommand(String[])}
      */
-    @Override
-    public void run() {
-        try {
-            userProfile = new UserProfile(in.readLine());
-            userProfile.setName(userProfile.getTemporaryName());
-            userProfile.setLoggedIn(false);
-            System.out.println("Connection established with " + userProfile.getName() + " on " + clientSocket.getInetAddress() + ":" + clientSocket.getPort());
-            out.println("Welcome to the chat server " + userProfile.getName() + "\nPlease .login, .register or .help");
-            String input;
-            while ((input = in.readLine()) != null) {
-                String[] parts = input.split(" ");
-                String command = parts[0].toLowerCase();
-                if (!userProfile.isLoggedIn()) {
-                    switch (command) {
-                        case ".login":
-                            if (parts.length != 3) { //numero de argumentos incorreto
-                                out.println("Invalid login, use .login <username> <password>");
-                                break;
-                            }
-                            if (tcpHandler.isAlreadyLoggedIn(parts[1])) { //verifica se o user já está logado
-                                out.println("User already logged in");
-                                break;
-                            }
-                            String result;
-                            if ((result = inputHandler.verifyLogin(parts[1], parts[2])) != null) { //verifica se o login é válido
-                                userProfile.setName(parts[1]);                                      //se for, atualiza o nome do user, o nível de acesso
-                                switch (result) {
-                                    case "CONVIDADO":
-                                        userProfile.setAccessLevel(AccessLevel.CONVIDADO);
-                                        break;
-                                    case "BAIXO":
-                                        userProfile.setAccessLevel(AccessLevel.BAIXO);
-                                        break;
-                                    case "MEDIO":
-                                        userProfile.setAccessLevel(AccessLevel.MEDIO);
-                                        break;
-                                    case "ALTO":
-                                        userProfile.setAccessLevel(AccessLevel.ALTO);
-                                        break;
-                                }
-                                userProfile.setLoggedIn(true);
-                                userProfile.setCurrentRoom("CONVIDADO");//inicializa a sala atual como CONVIDADO
-                                out.println("userinfo " + parts[1] + " Login_successfull._You_can_now_send_messages");
-                                out.println("Use .help to see available commands");
-                                String chat = inputHandler.joinRoom(userProfile, "CONVIDADO");
-                                
-                                out.println("--------- Joined room CONVIDADO -----------");
-                                String[] chatArray = chat.split(":");
-                                out.println("chat " + chatArray[0] + " " + chatArray[1]);
-                                loadMessages("CONVIDADO"); //carrega as ultimas 5 mensagens da sala
-                                logger.info(parts[1] + " Joined CONVIDADO" );
-                                
-                            } else {
-                                out.println("Login inválido");
-                            }
-                            break;
-                        case ".register":
-                            if (parts.length != 3) {
-                                out.println("Invalid register, use .register <username> <password>");
-                                break;
-                            }
-                            out.println(inputHandler.registerUser(parts[1], parts[2]));
-                            logger.info("New User Registered: " + parts[1]);
-                            break;
-                        case ".help":
-                            if (parts.length != 1) {
-                                out.println("Invalid command, use .help");
-                                break;   
-                            }
-                            out.println("Commands:\n.login <username> <password>\n.register <username> <password>\n.help");
-                            break;
-                        default:
-                            out.println("Please login or register");
-                            break;
+    CompletableFuture<Void> handleInput(String input) {
+        return handleCommand(input.split(" "));
+    }
+
+    /**
+     * Processes a frame of the binary protocol. A command frame carries the arguments as
+     * separate fields, so they may hold spaces, and .notify its whole message, which may
+     * also hold newlines.
+     *
+     * @param frame the frame received, positioned after its opcode
+     * @return a future completed once the command has replied
+     * @throws IOException if the frame is malformed or its opcode unknown
+     */
+    CompletableFuture<Void> handleFrame(FrameReader frame) throws IOException {
+        return handleCommand(commandOf(frame));
+    }
+
+    /**
+     * Reads the command of a frame of the binary protocol, so that it can be run later by
+     * {@link #handleCommand(String[])} while the reader moves on to the next frame.
+     *
+     * @param frame the frame received, positioned after its opcode
+     * @return the command, such as ".login", and its arguments
+     * @throws IOException if the frame is malformed or its opcode unknown
+     */
+    static String[] commandOf(FrameReader frame) throws IOException {
+        switch (frame.opcode()) {
+            case Wire.PONG:
+                return new String[] {".pong"};
+            case Wire.LINE:
+                return frame.getString().split(" ");
+            default:
+                String command = Wire.command(frame.opcode());
+                if (command == null) throw new IOException("Unknown opcode " + frame.opcode());
+                return frame.getStrings(command);
+        }
+    }
+
+    /**
+     * Runs a command given as its name followed by its arguments, as split from a text line
+     * or read from a command frame. See {@link #handleInput(String)} for the commands.
+     *
+     * .login and .register wait for the password hashing pool: in a reactor session they
+     * return at once and reply from a worker when the password has been checked, and the
+     * session runs its next command only after that.
+     *
+     * @param parts the command, such as ".login", and its arguments
+     * @return a future completed once the command has replied, already completed for every
+     *         other command and in thread-per-connection mode
+     */
+    CompletableFuture<Void> handleCommand(String[] parts) {
+        lastActivity = System.nanoTime();
+        String command = parts[0].toLowerCase();
+        if (command.equals(".pong")) return DONE; //resposta ao heartbeat, só atualiza a atividade
+        if (!userProfile.isLoggedIn()) {
+            switch (command) {
+                case ".login":
+                    if (parts.length != 3) { //numero de argumentos incorreto
+                        out.text("Invalid login, use .login <username> <password>");
+                        break;
                     }
-                } else {
-                    switch (command) {
-                        case ".profile":
-                            if (parts.length != 1) {
-                                out.println("Invalid command, use .profile");
-                                break; 
-                            }
-                            out.println("--------- User Profile -----------");
-                            out.println("Username: " + userProfile.getName() + "\nAccess Level: " + userProfile.getAccessLevel());
-                            break;
-                        case ".logout":
-                            if (parts.length != 1) {
-                                out.println("Invalid command, use .logout");
-                                break; 
-                            }
-                            userProfile.setName(userProfile.getTemporaryName()); //restaura o nome temporário gerado quando o user se conectou
-                            userProfile.setAccessLevel(null);
-                            userProfile.setCurrentRoom(null);
-                            out.println("userinfo " + userProfile.getName() + " Logout_successful.");
-                            userProfile.setLoggedIn(false);
-                            out.println("chat off");
-                            break;
-                        case ".join":
-                            if (parts.length != 2) {
-                                out.println("Invalid room, use .join <convidado/baixo/medio/alto>");
-                                break;                    
-                            }
-                            if (userProfile.getCurrentRoom().equals(parts[1].toUpperCase())) { //verifica se o user já está na sala
-                                out.println("You are already in room " + parts[1].toUpperCase());
-                                break;
-                            }
-                            String result;
-                            String room = parts[1].toUpperCase();
-                            if ((result = inputHandler.joinRoom(userProfile, room)) != null) {
-                                if (result.equals("DENY")) { //user não tem permissão para entrar na sala
-                                    out.println("Access denied to room " + room);
-                                    logger.warning(userProfile.getName() + " tried to access " + room + ". UserProfile: " + userProfile);
-                                } else {
-                                    out.println("--------- Joined " +room+" -----------");
-                                    userProfile.setCurrentRoom(room);
-                                    String[] resultArray = result.split(":");
-                                    out.println("chat " + resultArray[0] + " " + resultArray[1]);
-                                    loadMessages(room);
-                                    logger.info(userProfile.getName() + " joined " + room);
-                                }
-                            } else {
-                                out.println("Failed to join room " + room);
-                            }
-                            break;
-                        case ".help":
-                            if (parts.length != 1) {
-                                out.println("Invalid command, use .help");
-                                break; 
-                            }
-                            out.println("--------- HELP MENU -----------");
-                            out.println("Commands available:\n.profile\n.logout\n.join <name>\n.help\n.online\n.request <evac/comms/res>\n.accept <evac/comms/res>\n.notify <message>");	
-                            break;
-                        case ".online":
-                            if (parts.length != 1) {
-                                out.println("Invalid command, use .online");
-                                break; 
-                            }
-                            out.println("Users(" + tcpHandler.getUsersSize() + "): " + tcpHandler.getUsers());
-                            break;
-                        case ".request":
-                            if (parts.length < 2) {
-                                out.println("Invalid request, use .request <evac/comms/res>");
-                                break;
-                            }
-                            String alertRequest = inputHandler.requestAlert(userProfile, parts[1]);
-                            out.println(alertRequest);
-                            if (alertRequest.equals("You dont have permission to request this alert")) logger.warning(userProfile.getName() + " tried to request an alert without perms");
-                            else if (alertRequest.equals("Evacuation request sent, wait for someone to accept it")) logger.info(userProfile.getName() + " requested " + parts[1]);
-                            break;
-                        case ".accept":
-                            if (parts.length < 2) {
-                                out.println("Invalid request, use .accept <evac/comms/res>");
-                                break;
-                            }
-                            String alertAccept = inputHandler.accept(userProfile, parts[1]);
-                            out.println(alertAccept);
-                            if (alertAccept.equals("You cannout accept your own request")) logger.warning(userProfile.getName() + " tried to accept is own request");
-                            else if (alertAccept.equals("Alert ended")) logger.info(userProfile.getName() + " accepted " + parts[1]);
-                            else if (alertAccept.equals("You dont have permission to accept this alert")) logger.warning(userProfile.getName() + " tried do accecpt a request without perms");
-                            break; 
-                        case ".notify":
-                            if (parts.length < 2) {
-                                out.println("Invalid notify, use .notify <message>");
-                                break;
-                            }
-                            String message = "[NOTIFICATION - "+userProfile.getName()+"]: ";
-                            for (int i = 1; i < parts.length; i++) {
-                                message += parts[i] + " ";
-                            }
-                            out.println("Notification sent for all groups");
-                            inputHandler.notify(message);
-                            break;
-                        default:
-                            break;
+                    if (tcpHandler.isAlreadyLoggedIn(parts[1])) { //verifica se o user já está logado
+                        out.text("User already logged in");
+                        break;
                     }
-                }
+                    long loginStart = System.nanoTime();
+                    return after(inputHandler.verifyLogin(parts[1], parts[2], clientAddress), result -> {
+                        login(parts[1], result);
+                        inputHandler.getMetrics().histogram("login.latency").record(System.nanoTime() - loginStart);
+                    });
+                case ".register":
+                    if (parts.length != 3) {
+                        out.text("Invalid register, use .register <username> <password>");
+                        break;
+                    }
+                    return after(inputHandler.registerUser(parts[1], parts[2], clientAddress), result -> {
+                        out.text(result);
+                        if (result.startsWith("Registration successful")) logger.info("New User Registered: " + parts[1]);
+                    });
+                case ".help":
+                    if (parts.length != 1) {
+                        out.text("Invalid command, use .help");
+                        break;   
+                    }
+                    out.text("Commands:\n.login <username> <password>\n.register <username> <password>\n.help");
+                    break;
+                default:
+                    out.text("Please login or register");
+                    break;
             }
-        } catch (IOException ignored) {
-            ignored.printStackTrace();
+        } else {
+            switch (command) {
+                case ".profile":
+                    if (parts.length != 1) {
+                        out.text("Invalid command, use .profile");
+                        break; 
+                    }
+                    out.text("--------- User Profile -----------");
+                    out.text("Username: " + userProfile.getName() + "\nAccess Level: " + userProfile.getAccessLevel());
+                    break;
+                case ".logout":
+                    if (parts.length != 1) {
+                        out.text("Invalid command, use .logout");
+                        break; 
+                    }
+                    tcpHandler.logout(userProfile.getName(), this);
+                    userProfile.setName(userProfile.getTemporaryName()); //restaura o nome temporário gerado quando o user se conectou
+                    userProfile.setAccessLevel(null);
+                    userProfile.setCurrentRoom(null);
+                    out.userInfo(userProfile.getName(), "Logout successful.");
+                    userProfile.setLoggedIn(false);
+                    out.chatOff();
+                    break;
+                case ".join":
+                    if (parts.length != 2) {
+                        out.text("Invalid room, use .join <convidado/baixo/medio/alto>");
+                        break;                    
+                    }
+                    if (userProfile.getCurrentRoom().equals(parts[1].toUpperCase())) { //verifica se o user já está na sala
+                        out.text("You are already in room " + parts[1].toUpperCase());
+                        break;
+                    }
+                    long joinStart = System.nanoTime();
+                    String result;
+                    String room = parts[1].toUpperCase();
+                    if ((result = inputHandler.joinRoom(userProfile, room)) != null) {
+                        if (result.equals("DENY")) { //user não tem permissão para entrar na sala
+                            out.text("Access denied to room " + room);
+                            logger.warning(userProfile.getName() + " tried to access " + room + ". UserProfile: " + userProfile);
+                        } else {
+                            out.text("--------- Joined " +room+" -----------");
+                            userProfile.setCurrentRoom(room);
+                            String[] resultArray = result.split(":");
+                            out.chat(resultArray[0], Integer.parseInt(resultArray[1]));
+                            loadMessages(room);
+                            inputHandler.getMetrics().histogram("join.latency").record(System.nanoTime() - joinStart);
+                            logger.info(userProfile.getName() + " joined " + room);
+                        }
+                    } else {
+                        out.text("Failed to join room " + room);
+                    }
+                    break;
+                case ".history":
+                    if (parts.length != 3 && parts.length != 4) {
+                        out.text("Invalid history, use .history <room> <count> [before]");
+                        break;
+                    }
+                    String historyRoom = parts[1].toUpperCase();
+                    int count;
+                    long before;
+                    try {
+                        count = Math.min(Integer.parseInt(parts[2]), MAX_HISTORY);
+                        before = parts.length == 4 ? Long.parseLong(parts[3]) : Long.MAX_VALUE;
+                    } catch (NumberFormatException e) {
+                        count = 0;
+                        before = -1;
+                    }
+                    if (count < 1 || before < 0) { //não numérico, ou uma página vazia ou antes do início
+                        out.text("Invalid history, use .history <room> <count> [before]");
+                        break;
+                    }
+                    String access = inputHandler.joinRoom(userProfile, historyRoom);
+                    if (access == null || access.equals("DENY")) { //mesmas permissões do .join
+                        out.text("Access denied to room " + historyRoom);
+                        logger.warning(userProfile.getName() + " tried to read the history of " + historyRoom + ". UserProfile: " + userProfile);
+                        break;
+                    }
+                    loadHistory(historyRoom, count, before);
+                    break;
+                case ".help":
+                    if (parts.length != 1) {
+                        out.text("Invalid command, use .help");
+                        break; 
+                    }
+                    out.text("--------- HELP MENU -----------");
+                    out.text("Commands available:\n.profile\n.logout\n.join <name>\n.history <room> <count> [before]\n.help\n.online\n.request <evac/comms/res>\n.accept <evac/comms/res>\n.notify <message>\n.stats");	
+                    break;
+                case ".online":
+                    if (parts.length != 1) {
+                        out.text("Invalid command, use .online");
+                        break; 
+                    }
+                    out.text("Users(" + tcpHandler.getUsersSize() + "): " + tcpHandler.getUsers());
+                    break;
+                case ".request":
+                    if (parts.length < 2) {
+                        out.text("Invalid request, use .request <evac/comms/res>");
+                        break;
+                    }
+                    String alertRequest = inputHandler.requestAlert(userProfile, parts[1]);
+                    out.text(alertRequest);
+                    if (alertRequest.equals("You dont have permission to request this alert")) logger.warning(userProfile.getName() + " tried to request an alert without perms");
+                    else if (alertRequest.equals("Evacuation request sent, wait for someone to accept it")) logger.info(userProfile.getName() + " requested " + parts[1]);
+                    break;
+                case ".accept":
+                    if (parts.length < 2) {
+                        out.text("Invalid request, use .accept <evac/comms/res>");
+                        break;
+                    }
+                    String alertAccept = inputHandler.accept(userProfile, parts[1]);
+                    out.text(alertAccept);
+                    if (alertAccept.equals("You cannout accept your own request")) logger.warning(userProfile.getName() + " tried to accept is own request");
+                    else if (alertAccept.equals("Alert ended")) logger.info(userProfile.getName() + " accepted " + parts[1]);
+                    else if (alertAccept.equals("You dont have permission to accept this alert")) logger.warning(userProfile.getName() + " tried do accecpt a request without perms");
+                    break; 
+                case ".notify":
+                    if (parts.length < 2) {
+                        out.text("Invalid notify, use .notify <message>");
+                        break;
+                    }
+                    String message = "[NOTIFICATION - "+userProfile.getName()+"]: ";
+                    for (int i = 1; i < parts.length; i++) {
+                        message += parts[i] + " ";
+                    }
+                    out.text("Notification sent for all groups");
+                    inputHandler.notify(message);
+                    break;
+                case ".stats":
+                    if (parts.length != 1) {
+                        out.text("Invalid command, use .stats");
+                        break;
+                    }
+                    if (userProfile.getAccessLevel() != AccessLevel.ALTO) { //só utilizadores ALTO veem as métricas
+                        out.text("You dont have permission to see the stats");
+                        logger.warning(userProfile.getName() + " tried to see the stats without perms");
+                        break;
+                    }
+                    out.text("--------- Server Stats -----------");
+                    out.text(inputHandler.getMetrics().report());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return DONE;
+    }
+
+    /**
+     * Finishes a .login once the password has been checked.
+     *
+     * @param username the username the client logged in with
+     * @param result the user role if the credentials are valid, "BUSY" if the login was not
+     *        admitted, or null if the credentials are invalid
+     */
+    private void login(String username, String result) {
+        if ("BUSY".equals(result)) { //pedido rejeitado pelo controlo de admissão
+            out.text("Server busy, please try again later");
+            logger.warning("Login of " + username + " from " + clientAddress + " rejected, server busy");
+            return;
         }
+        if (result == null) { //login inválido
+            out.text("Login inválido");
+            return;
+        }
+        if (!tcpHandler.login(username, this)) { //outra sessão entrou com o mesmo user entretanto
+            out.text("User already logged in");
+            return;
+        }
+        userProfile.setName(username); //atualiza o nome do user e o nível de acesso
+        switch (result) {
+            case "CONVIDADO":
+                userProfile.setAccessLevel(AccessLevel.CONVIDADO);
+                break;
+            case "BAIXO":
+                userProfile.setAccessLevel(AccessLevel.BAIXO);
+                break;
+            case "MEDIO":
+                userProfile.setAccessLevel(AccessLevel.MEDIO);
+                break;
+            case "ALTO":
+                userProfile.setAccessLevel(AccessLevel.ALTO);
+                break;
+        }
+        userProfile.setLoggedIn(true);
+        userProfile.setCurrentRoom("CONVIDADO");//inicializa a sala atual como CONVIDADO
+        out.userInfo(username, "Login successfull. You can now send messages");
+        out.text("Use .help to see available commands");
+        String chat = inputHandler.joinRoom(userProfile, "CONVIDADO");
+        
+        out.text("--------- Joined room CONVIDADO -----------");
+        String[] chatArray = chat.split(":");
+        out.chat(chatArray[0], Integer.parseInt(chatArray[1]));
+        loadMessages("CONVIDADO"); //carrega as ultimas 5 mensagens da sala
+        logger.info(username + " Joined CONVIDADO" );
+    }
+
+    /**
+     * Runs the rest of a command once an operation on the password hashing pool completes.
+     * A thread-per-connection waits for it on its own thread; a reactor session gets a future
+     * that completes once the reply is sent on a worker, and runs its next command then.
+     */
+    private <T> CompletableFuture<Void> after(CompletableFuture<T> pending, Consumer<T> reply) {
+        if (continuations == null) {
+            reply.accept(pending.join());
+            return DONE;
+        }
+        return pending.thenAcceptAsync(reply, continuations);
+    }
+
+    /**
+     * Sends a line to the client from another session or thread, such as the alert timer.
+     * The caller never waits for the client's socket: a reactor session queues its output
+     * anyway, and a thread-per-connection hands the message to the queue of its notifier
+     * thread, which writes the messages in order.
+     *
+     * @param message the line to send
+     */
+    public void send(String message) {
+        notifications.execute(() -> out.text(message));
+    }
+
+    /**
+     * Retrieves the access level of the logged in user.
+     *
+     * @return the access level, or null if the user is not logged in
+     */
+    public AccessLevel getAccessLevel() {
+        return userProfile != null ? userProfile.getAccessLevel() : null;
+    }
+
+    /**
+     * Retrieves the chat room the user is in.
+     *
+     * @return the name of the current room, or null if the user is not logged in
+     */
+    public String getCurrentRoom() {
+        return userProfile != null ? userProfile.getCurrentRoom() : null;
     }
 
     /**
@@ -268,18 +600,51 @@ public class TCPConnection extends Thread {
 
     
     /**
-     * Loads and prints the last 10 messages from the specified room.
-     * If the room has fewer than 10 messages, all messages are printed.
+     * Loads and prints the most recent messages from the specified room, which the
+     * input handler keeps in memory.
      *
      * @param room the name of the room from which to load messages
      */
     public void loadMessages(String room) {
-        List<String> lines = inputHandler.getMessages(room);
-        if (lines != null && !lines.isEmpty()) {
-            int startIndex = lines.size() > 5 ? lines.size() - 5 : 0;
-            List<String> lastMessages = lines.subList(startIndex, lines.size());
-        for (String line : lastMessages) 
-            out.println(line);
+        for (String line : inputHandler.getRecentMessages(room))
+            out.text(line);
     }
+
+    /**
+     * Prints a page of the history of the specified room, with the sequence number to use
+     * to read the previous page.
+     *
+     * @param room the name of the room from which to load messages
+     * @param count the maximum number of messages to print
+     * @param before the sequence number after the last message to print (exclusive)
+     */
+    public void loadHistory(String room, int count, long before) {
+        long end = Math.min(before, inputHandler.getMessageCount(room));
+        List<String> lines = inputHandler.getMessages(room, count, end);
+        long first = end - lines.size();
+        out.text("--------- History " + room + " (" + first + "-" + end + ") -----------");
+        for (String line : lines)
+            out.text(line);
+        if (first > 0) out.text("Older messages: .history " + room + " " + count + " " + first);
+    }
+
+    /**
+     * NotifierThread is a private inner class that implements Runnable.
+     * In thread-per-connection mode it parks on the connection's outbox until a ping or a
+     * message from another thread is queued, and writes it to the client's socket, so the
+     * thread that queued it never blocks on a slow client. It lives as long as the
+     * connection and exits when run() interrupts it at the end of the session.
+     */
+    private class NotifierThread implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    outbox.take().run();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
     }
 }
@@ -1,10 +1,22 @@
 package dev.superman.server.tcp;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.util.Iterator;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import dev.superman.ED.SynchronizedArrayList;
+import dev.superman.server.ServerThreads;
 import dev.superman.server.loggerThread.LoggerThread;
 import dev.superman.server.protocols.InputHandler;
 
@@ -12,36 +24,141 @@ import dev.superman.server.protocols.InputHandler;
  * TCPHandler is a server-side class that handles incoming TCP connections.
  * It extends the Thread class to allow concurrent handling of multiple connections.
  * 
- * <p>This class initializes a server socket on a specified port and listens for incoming
+ * <p>This class initializes a server socket on the port given by the server (0 binds an
+ * ephemeral port, see {@link #getPort()}) and listens for incoming
  * connections. When a new connection is accepted, it creates a TCPConnection object,
- * adds it to a synchronized list of connections, and starts the connection in a new thread.</p>
+ * adds it to a concurrent set of connections, and starts the connection in a new thread.</p>
  * 
- * <p>It also provides methods to get the input handler, the number of connected users,
- * a list of usernames of connected users, and to check if a user is already logged in.</p>
+ * <p>When the server is started with {@code -Dsuperman.tcp.mode=nio}, connections are
+ * accepted on a ServerSocketChannel instead and handed in round-robin order to a fixed
+ * set of {@link TCPReactor} threads, one per core by default
+ * ({@code -Dsuperman.tcp.reactors=<n>}), which own the connections and decode their commands.
+ * The commands themselves run on a pool of {@code superman.tcp.workers} threads (default:
+ * twice the cores), so that a command that blocks never stalls the other connections of
+ * its reactor.</p>
+ * 
+ * <p>Connections remove themselves when their client disconnects. A SessionReaper thread
+ * pings connections that have been idle for {@code superman.tcp.pingIntervalMs} (default
+ * 30 s) and closes those idle for {@code superman.tcp.idleTimeoutMs} (default 90 s).</p>
+ * 
+ * <p>{@link #close()} stops accepting, closes every connection and stops the reactors and
+ * the reaper.</p>
+ * 
+ * <p>It also provides methods to get the input handler, the number of logged in users,
+ * a list of their usernames, and to check if a user is already logged in. Logged in users
+ * are indexed by username in a ConcurrentHashMap that the connections update on login,
+ * logout and disconnect, so these checks do not walk the connections.</p>
  * 
  * @see InputHandler
  * @see TCPConnection
+ * @see TCPReactor
  */
 public class TCPHandler extends Thread {
     private InputHandler inputHandler;
-    private SynchronizedArrayList<TCPConnection> tcpConnections;
-    private static final int PORT = 7;
+    private Set<TCPConnection> tcpConnections;
+    private Map<String, TCPConnection> onlineUsers;
+    private AtomicLong membershipVersion;
+    private volatile UsersListing usersListing;
+    private static final boolean NIO_MODE = "nio".equalsIgnoreCase(System.getProperty("superman.tcp.mode", "blocking"));
+    private static final int REACTORS = Integer.getInteger("superman.tcp.reactors", Runtime.getRuntime().availableProcessors());
+    private static final int WORKERS = Integer.getInteger("superman.tcp.workers", 2 * Runtime.getRuntime().availableProcessors());
+    private static final long PING_INTERVAL_MS = Long.getLong("superman.tcp.pingIntervalMs", 30000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("superman.tcp.idleTimeoutMs", 90000);
+    private static final long STOP_TIMEOUT_MS = 5000;
     private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private TCPReactor[] reactors;
+    private ExecutorService workers;
+    private int nextReactor;
+    private int port;
+    private Thread reaperThread;
+    private volatile boolean running;
     LoggerThread logger;
 
-    public TCPHandler(InputHandler inputHandler, LoggerThread logger) {
+    public TCPHandler(InputHandler inputHandler, LoggerThread logger, int port) throws IOException {
+        super("tcp-acceptor");
         this.inputHandler = inputHandler;
-        tcpConnections = new SynchronizedArrayList<>();
+        tcpConnections = ConcurrentHashMap.newKeySet(); //muda a cada ligação, ao contrário dos grupos UDP
+        onlineUsers = new ConcurrentHashMap<>();
+        membershipVersion = new AtomicLong();
         this.logger = logger;
         try {
-            serverSocket = new ServerSocket(PORT);
-            String message = "Server started and listening on port " + PORT;
-            System.out.println(message);
-            logger.info(message);
+            if (NIO_MODE) {
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(port));
+                this.port = serverChannel.socket().getLocalPort();
+            } else {
+                serverSocket = new ServerSocket(port);
+                this.port = serverSocket.getLocalPort();
+            }
         } catch (IOException e) {
-            logger.log("Server failed to listen on port " + PORT);
-            e.printStackTrace();
-            System.exit(0);
+            logger.log("Server failed to listen on port " + port);
+            if (serverChannel != null) serverChannel.close();
+            throw e;
+        }
+        running = true;
+        if (NIO_MODE) {
+            workers = ServerThreads.newPool("tcp-worker", Math.max(1, WORKERS));
+            reactors = new TCPReactor[Math.max(1, REACTORS)];
+            for (int i = 0; i < reactors.length; i++) {
+                reactors[i] = new TCPReactor(i, logger);
+                reactors[i].start();
+            }
+        }
+        if (PING_INTERVAL_MS > 0 || IDLE_TIMEOUT_MS > 0) reaperThread = ServerThreads.start("tcp-reaper", new SessionReaper());
+        String message = "Server started and listening on port " + this.port + (NIO_MODE ? " with " + reactors.length + " reactors" : "");
+        System.out.println(message);
+        logger.info(message);
+    }
+
+    /**
+     * Retrieves the port the server listens on, which is the bound ephemeral port when
+     * the server was configured with port 0.
+     *
+     * @return the TCP port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Retrieves the pool that runs the commands of the reactors' sessions.
+     *
+     * @return the worker pool, or null in blocking mode
+     */
+    ExecutorService getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Stops accepting connections, closes every open connection and stops the reactors,
+     * their worker pool and the session reaper.
+     */
+    public void close() {
+        running = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException ignored) {}
+        for (TCPConnection tcpConnection : tcpConnections)
+            tcpConnection.close();
+        if (reaperThread != null) reaperThread.interrupt();
+        if (reactors != null) {
+            for (TCPReactor reactor : reactors)
+                reactor.close();
+        }
+        try {
+            join(STOP_TIMEOUT_MS);
+            if (reactors != null) {
+                for (TCPReactor reactor : reactors)
+                    reactor.join(STOP_TIMEOUT_MS);
+            }
+            if (workers != null) {
+                workers.shutdown(); //depois dos reactors, que ainda entregam o fim das sessões
+                if (!workers.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -50,19 +167,45 @@ public class TCPHandler extends Thread {
      * Creates a new TCPConnection for each accepted connection and starts it.
      * Adds the new TCPConnection to the list of active connections.
      * 
-     * This method runs indefinitely in a loop, accepting and handling new connections.
+     * This method runs in a loop, accepting and handling new connections, until the handler is closed.
      * 
      * @throws IOException if an I/O error occurs when waiting for a connection.
      */
     @Override
     public void run() {
-        while (true) {
+        if (NIO_MODE) {
+            acceptChannels();
+            return;
+        }
+        while (running) {
             try {
                 TCPConnection tcpConnection = new TCPConnection(serverSocket.accept(), this, logger);
                 tcpConnections.add(tcpConnection);
-                tcpConnection.start();
+                ServerThreads.start("tcp-connection", tcpConnection);
+                logger.info("Creating new TCP Connection");
+            } catch (IOException ignored) {
+                if (!running) return; //o server socket foi fechado por close()
+                logger.log("Failed Creating new TCP Connection");
+            }
+        }
+    }
+
+    /**
+     * Accepts connections in NIO mode and hands each one to the next reactor.
+     * The reactor then owns the channel for the rest of its life.
+     */
+    private void acceptChannels() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                TCPReactor reactor = reactors[nextReactor];
+                nextReactor = (nextReactor + 1) % reactors.length;
+                ReactorSession session = new ReactorSession(channel, reactor, this, logger);
+                tcpConnections.add(session.getTcpConnection());
+                reactor.register(session);
                 logger.info("Creating new TCP Connection");
             } catch (IOException ignored) {
+                if (!running) return;
                 logger.log("Failed Creating new TCP Connection");
             }
         }
@@ -78,28 +221,49 @@ public class TCPHandler extends Thread {
     }
 
     /**
-     * Returns the number of active TCP connections.
+     * Removes a connection whose client disconnected or was closed by the session reaper.
      *
-     * @return the size of the tcpConnections list.
+     * @param tcpConnection the connection to remove
      */
-    public int getUsersSize() {
+    void removeConnection(TCPConnection tcpConnection) {
+        tcpConnections.remove(tcpConnection);
+    }
+
+    /**
+     * Returns the number of open TCP connections, logged in or not.
+     *
+     * @return the size of the tcpConnections set.
+     */
+    public int getConnectionsSize() {
         return tcpConnections.size();
     }
 
     /**
-     * Retrieves a list of usernames from the current TCP connections.
+     * Returns the number of users logged in.
+     *
+     * @return the size of the online users index.
+     */
+    public int getUsersSize() {
+        return onlineUsers.size();
+    }
+
+    /**
+     * Retrieves a list of the usernames logged in. The listing is cached and only rebuilt
+     * after a login, logout or disconnect.
      *
      * @return A JSON-like string representation of the usernames in the format: 
-     *         ["username1","username2",...,"usernameN"]. The string will not have 
+     *         ["username1","username2",...,"usernameN"], sorted by name. The string will not have 
      *         a trailing comma.
      */
     public String getUsers() {
-        String result = "[";
-        Iterator<TCPConnection> it = tcpConnections.iterator();
-        while (it.hasNext()) {
-            result += it.next().getUsername() + ",";
-        }
-        return result.substring(0, result.length() - 1) + "]";
+        long version = membershipVersion.get();
+        UsersListing listing = usersListing;
+        if (listing != null && listing.version == version) return listing.text;
+        List<String> usernames = new ArrayList<>(onlineUsers.keySet());
+        Collections.sort(usernames);
+        String text = "[" + String.join(",", usernames) + "]";
+        usersListing = new UsersListing(version, text);
+        return text;
     }
     
     /**
@@ -109,12 +273,100 @@ public class TCPHandler extends Thread {
      * @return true if a user with the given username is already logged in, false otherwise
      */
     public boolean isAlreadyLoggedIn(String username) {
-        Iterator<TCPConnection> it = tcpConnections.iterator();
-        while (it.hasNext()) {
-            if (it.next().getUsername().equals(username)) {
-                return true;
+        return onlineUsers.containsKey(username);
+    }
+
+    /**
+     * Registers the session of a user who logged in. The check and the registration are a
+     * single atomic step, so two sessions can never log in with the same username.
+     *
+     * @param username the username of the user
+     * @param tcpConnection the connection of the user
+     * @return true if the user was registered, false if the username is already logged in
+     */
+    public boolean login(String username, TCPConnection tcpConnection) {
+        if (onlineUsers.putIfAbsent(username, tcpConnection) != null) return false;
+        membershipVersion.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the session of a user who logged out or disconnected. Nothing is removed if
+     * the username belongs to another session.
+     *
+     * @param username the username of the user
+     * @param tcpConnection the connection of the user
+     */
+    public void logout(String username, TCPConnection tcpConnection) {
+        if (onlineUsers.remove(username, tcpConnection)) membershipVersion.incrementAndGet();
+    }
+
+    /**
+     * Retrieves the session of a user who is logged in.
+     *
+     * @param username the username of the user
+     * @return the user's connection, or null if the user is not logged in
+     */
+    public TCPConnection getSession(String username) {
+        return onlineUsers.get(username);
+    }
+
+    /**
+     * Retrieves the sessions of the users logged in. The view is weakly consistent: it
+     * can be iterated while users log in and out.
+     *
+     * @return the connections of the users logged in
+     */
+    public Collection<TCPConnection> getSessions() {
+        return onlineUsers.values();
+    }
+
+    /**
+     * The SessionReaper class implements Runnable and periodically checks every connection.
+     * A connection that has not sent anything for PING_INTERVAL_MS receives a "ping", which
+     * the client answers with ".pong"; one that stays silent for IDLE_TIMEOUT_MS, such as a
+     * client that vanished without closing its socket, is closed and removed.
+     *
+     * Either check is disabled by setting its property to 0.
+     */
+    private class SessionReaper implements Runnable {
+        @Override
+        public void run() {
+            long pingInterval = TimeUnit.MILLISECONDS.toNanos(PING_INTERVAL_MS);
+            long idleTimeout = TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS);
+            long period = Math.max(100, Math.min(PING_INTERVAL_MS > 0 ? PING_INTERVAL_MS : Long.MAX_VALUE, IDLE_TIMEOUT_MS > 0 ? IDLE_TIMEOUT_MS : Long.MAX_VALUE) / 2);
+            while (true) {
+                try {
+                    Thread.sleep(period);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long now = System.nanoTime();
+                int reaped = 0;
+                for (TCPConnection tcpConnection : tcpConnections) {
+                    long idle = tcpConnection.getIdleNanos(now);
+                    if (idleTimeout > 0 && idle >= idleTimeout) {
+                        tcpConnection.close();
+                        reaped++;
+                    } else if (pingInterval > 0 && idle >= pingInterval) {
+                        tcpConnection.ping();
+                    }
+                }
+                if (reaped > 0) logger.info("Closed " + reaped + " idle TCP connections");
             }
         }
-        return false;
+    }
+
+    /**
+     * The users listing built for a version of the online users index.
+     */
+    private static class UsersListing {
+        private final long version;
+        private final String text;
+
+        UsersListing(long version, String text) {
+            this.version = version;
+            this.text = text;
+        }
     }
 }
@@ -0,0 +1,151 @@
+package dev.superman.server.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import dev.superman.server.loggerThread.LoggerThread;
+
+/**
+ * TCPReactor is an event loop that owns a set of non-blocking client connections.
+ * The TCPHandler creates one reactor per core when the server runs in NIO mode and
+ * hands every accepted channel to one of them in round-robin order.
+ *
+ * <p>Each reactor has its own Selector and a single direct read buffer that is reused
+ * for every connection it owns. Bytes read from a channel are split into lines or frames
+ * by the {@link ReactorSession}, which hands the commands to the TCPHandler's worker pool,
+ * so that the event loop itself never blocks on a command.</p>
+ *
+ * <p>Other threads never touch the selector directly: new sessions, sessions with
+ * pending output and sessions to close are queued and the selector is woken up, so
+ * that all channel operations happen on the reactor thread.</p>
+ *
+ * <p>{@link #close()} stops the event loop, which then closes every session it still owns
+ * and its selector.</p>
+ *
+ * @see ReactorSession
+ * @see TCPHandler
+ */
+public class TCPReactor extends Thread {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final Queue<ReactorSession> pendingRegistrations;
+    private final Queue<ReactorSession> pendingFlushes;
+    private final Queue<ReactorSession> pendingCloses;
+    private LoggerThread logger;
+    private volatile boolean running;
+
+    public TCPReactor(int id, LoggerThread logger) throws IOException {
+        super("tcp-reactor-" + id);
+        selector = Selector.open();
+        readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        pendingRegistrations = new ConcurrentLinkedQueue<>();
+        pendingFlushes = new ConcurrentLinkedQueue<>();
+        pendingCloses = new ConcurrentLinkedQueue<>();
+        this.logger = logger;
+        running = true;
+    }
+
+    /**
+     * Hands a new session to this reactor. The channel is registered with the
+     * selector on the reactor thread.
+     *
+     * @param session the session to register
+     */
+    public void register(ReactorSession session) {
+        pendingRegistrations.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Asks the reactor to write the pending output of a session. When called from
+     * another thread the selector is woken up so the output is sent right away.
+     *
+     * @param session the session with pending output
+     */
+    void requestFlush(ReactorSession session) {
+        pendingFlushes.add(session);
+        if (Thread.currentThread() != this) selector.wakeup();
+    }
+
+    /**
+     * Asks the reactor to close a session, for example when it has been idle for too long.
+     *
+     * @param session the session to close
+     */
+    void requestClose(ReactorSession session) {
+        pendingCloses.add(session);
+        if (Thread.currentThread() != this) selector.wakeup();
+    }
+
+    /**
+     * Stops the event loop. The reactor thread closes its sessions and the selector
+     * before it exits.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Runs the event loop: waits for ready channels, registers new sessions, reads
+     * input, dispatches complete lines and writes pending output.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                registerPendingSessions();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ReactorSession session = (ReactorSession) key.attachment();
+                    if (key.isValid() && key.isReadable()) session.read(readBuffer);
+                    if (key.isValid() && key.isWritable()) session.write();
+                }
+                flushPendingSessions();
+                closePendingSessions();
+            } catch (IOException e) {
+                logger.log("TCP reactor " + getName() + " failed: " + e.getMessage());
+            }
+        }
+        closePendingSessions();
+        registerPendingSessions();
+        for (SelectionKey key : selector.keys())
+            ((ReactorSession) key.attachment()).close();
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void registerPendingSessions() {
+        ReactorSession session;
+        while ((session = pendingRegistrations.poll()) != null) {
+            try {
+                session.register(selector);
+            } catch (IOException e) {
+                logger.log("Failed registering TCP connection on " + getName());
+                session.close();
+            }
+        }
+    }
+
+    private void flushPendingSessions() {
+        ReactorSession session;
+        while ((session = pendingFlushes.poll()) != null)
+            session.write();
+    }
+
+    private void closePendingSessions() {
+        ReactorSession session;
+        while ((session = pendingCloses.poll()) != null)
+            session.close();
+    }
+}
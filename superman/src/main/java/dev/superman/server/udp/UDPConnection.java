@@ -1,76 +1,134 @@
 package dev.superman.server.udp;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
+import java.io.UncheckedIOException;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.MulticastSocket;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-import dev.superman.ED.SynchronizedArrayList;
+import dev.superman.ED.BufferPool;
+import dev.superman.ED.MpscQueue;
+import dev.superman.ED.SpscRingBuffer;
+import dev.superman.server.ServerThreads;
 import dev.superman.server.loggerThread.LoggerThread;
 import dev.superman.server.protocols.InputHandler;
 
 /**
- * The UDPConnection class extends the Thread class and is responsible for managing
- * a UDP multicast connection. It handles sending and receiving messages over a 
- * multicast socket.
+ * The UDPConnection class is responsible for managing a UDP multicast connection.
+ * It handles sending and receiving messages over a multicast datagram channel.
  * 
  * <p>This class includes inner classes for reading and writing messages, as well as 
- * managing the connection to the multicast group.</p>
+ * managing the connection to the multicast group. They are started through
+ * {@link ServerThreads}, so they run on virtual threads in virtual-thread mode.</p>
+ *
+ * <p>The reader receives every datagram into a direct buffer from a {@link BufferPool} and
+ * publishes it on a {@link SpscRingBuffer} of {@code superman.udp.ringSize} slots (default
+ * 4096). A persister thread drains the ring in batches and hands every buffer to
+ * {@link InputHandler#addMessage(String, ByteBuffer, BufferPool)}, whose room writer writes it
+ * to the chat log and returns it to the pool. Messages are never decoded on the way, so
+ * relaying one does not allocate once the pool has warmed up.</p>
+ *
+ * <p>The reader never waits for the disk: when the ring is full, because the chat log
+ * cannot keep up, the datagram is still received, so the socket's buffer keeps draining,
+ * and is counted as dropped. Every room has the counters chat.received.ROOM and
+ * chat.dropped.ROOM next to chat.persisted.ROOM, and a gauge of the messages waiting in
+ * the ring. The socket's receive buffer, which absorbs bursts faster than the reader, is
+ * set with {@code superman.udp.receiveBuffer} (default 4 MB, capped by the system; 0 keeps
+ * the system's default).</p>
+ *
+ * <p>The group is joined on the interface named by {@code -Dsuperman.udp.interface}, or by
+ * default on the interface the system routes the group's address through, which is the one
+ * the clients' multicast sockets use.</p>
  * 
+ * <p>The group address and port are given by the {@link dev.superman.server.Server} that owns
+ * the connection. Port 0 binds an ephemeral port, so several servers in one process can use
+ * the same group address without receiving each other's messages. {@link #close()} stops
+ * both threads.</p>
  */
-public class UDPConnection extends Thread {
+public class UDPConnection {
     private static int BYTES = 1024;
-    private static final Map<String, String> MULTICASTSOCKETS_INFO = Map.of(
-        "CONVIDADO", "230.0.0.1:5000",
-        "BAIXO", "230.0.0.1:5001",
-        "MEDIO", "230.0.0.1:5002",
-        "ALTO", "230.0.0.1:5003"
-    );
+    private static final int MAX_BATCH = 64;
+    private static final int RING_SIZE = Integer.getInteger("superman.udp.ringSize", 4096);
+    private static final int RECEIVE_BUFFER = Integer.getInteger("superman.udp.receiveBuffer", 4 * 1024 * 1024);
+    private static final String INTERFACE = System.getProperty("superman.udp.interface");
+    private static final byte[] SYSTEM_PREFIX = "Sistema: ".getBytes(StandardCharsets.UTF_8);
     private String udpName;
     private String ip;
     private int port;
+    private InetAddress group;
+    private InetSocketAddress target;
     private InputHandler inputHandler;
-    private MulticastSocket multicastSocket;
-    private SynchronizedArrayList<String> udpMessages;
-    private ReaderThread readerThread;
-    private WriterThread writerThread;
+    private DatagramChannel channel;
+    private BufferPool bufferPool;
+    private SpscRingBuffer<ByteBuffer> handOff;
+    private LongAdder received;
+    private LongAdder dropped;
+    private MpscQueue<String> udpMessages;
+    private AtomicInteger queuedMessages;
     private LoggerThread logger;
+    private Thread readerThread;
+    private Thread writerThread;
+    private Thread persisterThread;
+    private volatile boolean running;
 
     /**
      * Establishes a UDP connection for a specified chat group.
      *
      * @param udpName The name of the UDP chat group.
+     * @param group The address of the multicast group.
+     * @param port The port of the multicast group, or 0 for an ephemeral port.
      * @param inputHandler The handler for processing input messages.
      * @param logger The logger thread for logging messages.
      * 
-     * @throws IOException If an I/O error occurs when creating the multicast socket or joining the group.
+     * @throws IOException If an I/O error occurs when opening the channel or joining the group.
      */
-    @SuppressWarnings("deprecation")
-    public UDPConnection(String udpName, InputHandler inputHandler, LoggerThread logger) {
+    public UDPConnection(String udpName, InetAddress group, int port, InputHandler inputHandler, LoggerThread logger) throws IOException {
         this.udpName = udpName;
-        String multicastSocketInfo = MULTICASTSOCKETS_INFO.get(udpName);
-        String[] infoArray = multicastSocketInfo.split(":");
-        this.ip = infoArray[0];
-        this.port = Integer.valueOf(infoArray[1]);
+        this.group = group;
+        this.ip = group.getHostAddress();
         this.inputHandler = inputHandler;
         this.logger = logger;
+        udpMessages = new MpscQueue<>();
+        queuedMessages = new AtomicInteger();
+        handOff = new SpscRingBuffer<>(RING_SIZE);
+        bufferPool = new BufferPool(BYTES + 1, handOff.capacity()); //mais um byte para o '\n' que separa as mensagens no ficheiro
+        received = inputHandler.getMetrics().counter("chat.received." + udpName);
+        dropped = inputHandler.getMetrics().counter("chat.dropped." + udpName);
         try {
-            multicastSocket = new MulticastSocket(port);
-            multicastSocket.joinGroup(InetAddress.getByName(ip));
-            udpMessages = new SynchronizedArrayList<>();
-            readerThread = new ReaderThread();
-            writerThread = new WriterThread();
-            readerThread.start();
-            writerThread.start();
-            String message = "Chat group " + udpName + " started on " + ip + ":" + port;
-            System.out.println(message);
-            logger.info(message);
-        } catch (IOException ignored) {
+            NetworkInterface networkInterface = multicastInterface(group);
+            channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                    .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                    .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+                    .bind(new InetSocketAddress(port));
+            if (RECEIVE_BUFFER > 0) channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER);
+            channel.join(group, networkInterface);
+        } catch (IOException e) {
+            if (channel != null) channel.close();
             logger.log("Server failed to create multicast group " + udpName);
+            throw e;
         }
+        this.port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        target = new InetSocketAddress(group, this.port);
+        running = true;
+        persisterThread = ServerThreads.start("udp-persister-" + udpName, new PersisterThread());
+        readerThread = ServerThreads.start("udp-reader-" + udpName, new ReaderThread());
+        writerThread = ServerThreads.start("udp-writer-" + udpName, new WriterThread());
+        String message = "Chat group " + udpName + " started on " + ip + ":" + this.port;
+        System.out.println(message);
+        logger.info(message + " with a receive buffer of " + channel.getOption(StandardSocketOptions.SO_RCVBUF) + " bytes");
     }
 
     /**
@@ -83,73 +141,186 @@ public class UDPConnection extends Thread {
     }
 
     /**
-     * Retrieves the list of UDP messages.
+     * Queues a message to be sent to the multicast group and wakes the writer.
      *
-     * @return a SynchronizedArrayList containing the UDP messages.
+     * @param message the message to send
      */
-    public SynchronizedArrayList<String> getUdpMessages() {
-        return udpMessages;
+    public void send(String message) {
+        queuedMessages.incrementAndGet();
+        udpMessages.add(message);
     }
 
     /**
-     * Retrieves information about multicast sockets.
+     * Retrieves the number of messages waiting to be sent to the multicast group.
      *
-     * @return a map containing information about multicast sockets, where the key is the socket identifier and the value is the socket information.
+     * @return the depth of the outbound queue
      */
-    public static Map<String, String> getMulticastsocketsInfo() {
-        return MULTICASTSOCKETS_INFO;
+    public int getQueueDepth() {
+        return queuedMessages != null ? queuedMessages.get() : 0;
     }
 
     /**
-     * ReaderThread is a private inner class that extends Thread.
-     * It continuously listens for incoming UDP packets on a multicast socket.
-     * Upon receiving a packet, it converts the packet's data to a UTF-8 encoded string.
-     * If the message does not start with "Sistema: ", it adds the message to the input handler.
-     * This thread runs indefinitely, handling IOExceptions by continuing the loop.
+     * Retrieves the number of received messages waiting in the ring to be persisted.
+     *
+     * @return the depth of the inbound ring
+     */
+    public int getBacklog() {
+        return handOff != null ? handOff.size() : 0;
+    }
+
+    /**
+     * Retrieves the address of the multicast group, as sent to the clients that join the room.
+     *
+     * @return the group's address and port, in the form ip:port
      */
-    private class ReaderThread extends Thread {
+    public String getGroupInfo() {
+        return ip + ":" + port;
+    }
+
+    /**
+     * Stops the reader and the writer and closes the multicast channel. Messages still
+     * queued to be sent are discarded; messages already received are handed to the input
+     * handler before this method returns.
+     */
+    public void close() {
+        running = false;
+        if (writerThread != null) writerThread.interrupt();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        try {
+            if (readerThread != null) readerThread.join(); //o reader já não publica no anel
+            if (persisterThread != null) {
+                persisterThread.interrupt();
+                persisterThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Chooses the interface the group is joined and sent on: the one named by
+     * superman.udp.interface, else the one the system routes the group's address through,
+     * else the first interface that is up and supports multicast.
+     */
+    private static NetworkInterface multicastInterface(InetAddress group) throws IOException {
+        if (INTERFACE != null) {
+            NetworkInterface named = NetworkInterface.getByName(INTERFACE);
+            if (named == null) throw new SocketException("No network interface " + INTERFACE);
+            return named;
+        }
+        try (DatagramSocket probe = new DatagramSocket()) {
+            probe.connect(group, 9); //só consulta a tabela de rotas, nada é enviado
+            NetworkInterface routed = NetworkInterface.getByInetAddress(probe.getLocalAddress());
+            if (routed != null) return routed;
+        } catch (IOException | UncheckedIOException e) {
+            //sem rota para o grupo, escolhe-se uma interface abaixo
+        }
+        for (Iterator<NetworkInterface> it = NetworkInterface.networkInterfaces().iterator(); it.hasNext(); ) {
+            NetworkInterface candidate = it.next();
+            if (candidate.isUp() && candidate.supportsMulticast()) return candidate;
+        }
+        throw new SocketException("No network interface supports multicast");
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+        if (buffer.remaining() < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++)
+            if (buffer.get(buffer.position() + i) != prefix[i]) return false;
+        return true;
+    }
+
+    /**
+     * ReaderThread is a private inner class that implements Runnable.
+     * It continuously receives datagrams from the multicast channel, each into a direct
+     * buffer taken from the pool, of which at most BYTES are used so a line terminator
+     * always fits after the message. If the message does not start with "Sistema: ", the
+     * terminator is added and the buffer is published on the ring for the persister;
+     * otherwise the buffer goes straight back to the pool. A message that finds the ring
+     * full when it arrives is counted as dropped and its buffer returned to the pool.
+     * This thread runs until the connection is closed, handling IOExceptions by continuing the loop.
+     */
+    private class ReaderThread implements Runnable {
         @Override
         public void run() {
-            while (true) {
+            while (running) {
+                ByteBuffer buffer = bufferPool.acquire().limit(BYTES);
                 try {
-                    byte[] buffer = new byte[BYTES];
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    multicastSocket.receive(packet);
-                    String message = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
-                    if (!message.startsWith("Sistema: "))
-                        inputHandler.addMessage(udpName, message + "\n");
+                    channel.receive(buffer);
                 } catch (IOException e) {
-                    logger.log("Multicast Socket Failed {" + MULTICASTSOCKETS_INFO.toString() + "} ! Error reciveing message on: " + udpName + "!");
+                    bufferPool.release(buffer);
+                    if (!running) return; //o canal foi fechado por close()
+                    logger.log("Multicast Socket Failed {" + getGroupInfo() + "} ! Error reciveing message on: " + udpName + "!");
                     continue;
                 }
+                buffer.flip();
+                if (startsWith(buffer, SYSTEM_PREFIX)) {
+                    bufferPool.release(buffer);
+                    continue;
+                }
+                received.increment();
+                int end = buffer.limit();
+                buffer.limit(end + 1).put(end, (byte) '\n');
+                if (!handOff.offer(buffer)) { //o anel está cheio agora, não quando o receive começou
+                    dropped.increment();
+                    bufferPool.release(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * PersisterThread is a private inner class that implements Runnable.
+     * It parks on the ring until the reader publishes, then hands up to MAX_BATCH buffers at
+     * once to the input handler, which may block on the room's writer without holding up
+     * the reader. When close() interrupts it, it persists what is left in the ring and exits.
+     */
+    private class PersisterThread implements Runnable {
+        private final Consumer<ByteBuffer> persist = buffer -> inputHandler.addMessage(udpName, buffer, bufferPool);
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    handOff.await();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                handOff.drain(persist, MAX_BATCH);
             }
+            while (handOff.drain(persist, MAX_BATCH) > 0); //o que o reader publicou antes de parar
         }
     }
 
     /**
-     * WriterThread is a private inner class that extends Thread.
-     * It continuously checks for messages in the udpMessages list.
-     * If a message is found, it converts the message to a byte array,
-     * creates a DatagramPacket, and sends it using the multicastSocket.
-     * If an IOException occurs during packet creation or sending,
-     * it catches the exception and continues the loop.
+     * WriterThread is a private inner class that implements Runnable.
+     * It parks on the udpMessages queue until a message is queued, then drains up to
+     * MAX_BATCH messages at once and sends each one as a datagram to the multicast group,
+     * through the reader's channel and to the group address resolved by the constructor.
+     * If an IOException occurs while sending, it logs the error and continues with the
+     * next message. It exits when close() interrupts it.
      */
-    private class WriterThread extends Thread {
+    private class WriterThread implements Runnable {
         @Override
         public void run() {
+            List<String> batch = new ArrayList<>(MAX_BATCH);
             while (true) {
-                if (!udpMessages.isEmpty()) {
-                    String message = udpMessages.remove(0);
-                    byte[] buffer = message.getBytes();
-                    DatagramPacket packet = null;
+                try {
+                    batch.add(udpMessages.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                udpMessages.drainTo(batch, MAX_BATCH - 1);
+                queuedMessages.addAndGet(-batch.size());
+                for (String message : batch) {
                     try {
-                        packet = new DatagramPacket(buffer, buffer.length, InetAddress.getByName(ip), port);
-                        multicastSocket.send(packet);
+                        channel.send(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)), target);
                     } catch (IOException e) {
-                        logger.log("Multicast Socket Failed! {" + MULTICASTSOCKETS_INFO.toString() + "} Error sending message to: " + udpName + "!");
-                        continue;
+                        logger.log("Multicast Socket Failed! {" + getGroupInfo() + "} Error sending message to: " + udpName + "!");
                     }
                 }
+                batch.clear();
             }
         }
     }
@@ -0,0 +1,176 @@
+package dev.superman.wire;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * FrameReader decodes frames of the binary protocol (see {@link Wire}) into a byte array
+ * that is reused from one frame to the next.
+ *
+ * <p>Frames come either from a blocking stream, one whole frame per
+ * {@link #read(InputStream)}, or from a non-blocking channel through
+ * {@link #decode(ByteBuffer)}, which keeps a partial frame until the rest arrives. Once a
+ * frame is complete, its opcode and fields are read in order with the get methods; only
+ * the strings returned are allocated. Not thread-safe.</p>
+ */
+public class FrameReader {
+    private byte[] frame;
+    private int length;
+    private int filled;
+    private int lengthValue;
+    private int lengthShift;
+    private int position;
+
+    public FrameReader() {
+        frame = new byte[256];
+        length = -1;
+    }
+
+    /**
+     * Reads one whole frame from a stream, blocking until it arrives.
+     *
+     * @param in the stream
+     * @return true if a frame was read, false if the stream ended between frames
+     * @throws IOException if the stream fails, ends inside a frame or the frame is malformed
+     */
+    public boolean read(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) return false;
+                throw new EOFException("Stream ended inside a frame");
+            }
+            if (shift > 28) throw new IOException("Malformed frame length");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        start(value);
+        if (in.readNBytes(frame, 0, length) < length) throw new EOFException("Stream ended inside a frame");
+        complete();
+        return true;
+    }
+
+    /**
+     * Consumes bytes from a buffer until a frame is complete or the buffer is empty.
+     *
+     * @param in the bytes received, from its position to its limit
+     * @return true if a frame is complete, false if more bytes are needed
+     * @throws IOException if the frame is malformed
+     */
+    public boolean decode(ByteBuffer in) throws IOException {
+        if (position > 0) { //a frame anterior já foi lida
+            position = 0;
+            length = -1;
+        }
+        while (length < 0) {
+            if (!in.hasRemaining()) return false;
+            if (lengthShift > 28) throw new IOException("Malformed frame length");
+            byte b = in.get();
+            lengthValue |= (b & 0x7F) << lengthShift;
+            lengthShift += 7;
+            if ((b & 0x80) == 0) {
+                start(lengthValue);
+                lengthValue = 0;
+                lengthShift = 0;
+            }
+        }
+        int count = Math.min(in.remaining(), length - filled);
+        in.get(frame, filled, count);
+        filled += count;
+        if (filled < length) return false;
+        complete();
+        return true;
+    }
+
+    /**
+     * Retrieves the opcode of the frame read.
+     *
+     * @return the opcode, from 0 to 255
+     */
+    public int opcode() {
+        return frame[0] & 0xFF;
+    }
+
+    /**
+     * Tells whether the frame has fields left to read.
+     *
+     * @return true if there are bytes after the fields read so far
+     */
+    public boolean hasRemaining() {
+        return position < length;
+    }
+
+    /**
+     * Reads an unsigned varint field.
+     *
+     * @return the value
+     * @throws IOException if the field is malformed or past the end of the frame
+     */
+    public int getVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift <= 28; shift += 7) {
+            if (position >= length) throw new IOException("Field past the end of the frame");
+            byte b = frame[position++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a string field.
+     *
+     * @return the string
+     * @throws IOException if the field is malformed or past the end of the frame
+     */
+    public String getString() throws IOException {
+        int size = getVarInt();
+        if (size < 0 || size > length - position) throw new IOException("Field past the end of the frame");
+        String value = new String(frame, position, size, StandardCharsets.UTF_8);
+        position += size;
+        return value;
+    }
+
+    /**
+     * Reads the remaining fields of the frame as strings, after a first element given by
+     * the caller, so a command frame becomes the same array as a split text command.
+     *
+     * @param first the first element, such as the command
+     * @return first followed by every remaining string field
+     * @throws IOException if a field is malformed
+     */
+    public String[] getStrings(String first) throws IOException {
+        int count = 1;
+        int mark = position;
+        while (hasRemaining()) { //conta os campos antes de criar o array
+            int size = getVarInt();
+            if (size < 0 || size > length - position) throw new IOException("Field past the end of the frame");
+            position += size;
+            count++;
+        }
+        position = mark;
+        String[] fields = new String[count];
+        fields[0] = first;
+        for (int i = 1; i < count; i++)
+            fields[i] = getString();
+        return fields;
+    }
+
+    private void start(int frameLength) throws IOException {
+        if (frameLength < 1 || frameLength > Wire.MAX_FRAME) throw new IOException("Invalid frame length " + frameLength);
+        length = frameLength;
+        filled = 0;
+        position = 0;
+        if (frame.length < length) frame = Arrays.copyOf(frame, Math.max(length, Math.min(frame.length * 2, Wire.MAX_FRAME)));
+    }
+
+    private void complete() {
+        filled = length;
+        position = 1; //depois do opcode
+    }
+}
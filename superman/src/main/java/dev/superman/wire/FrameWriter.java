@@ -0,0 +1,148 @@
+package dev.superman.wire;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * FrameWriter encodes frames of the binary protocol (see {@link Wire}) into a byte array
+ * that is reused from one frame to the next.
+ *
+ * <p>A frame is built with {@link #begin(int)}, the put methods and {@link #end()}, and is
+ * then available through {@link #writeTo(OutputStream)} or {@link #copy()} until the next
+ * begin. Strings are encoded to UTF-8 straight into the array, without intermediate byte
+ * arrays. Not thread-safe: a writer shared between threads must be used under a lock.</p>
+ */
+public class FrameWriter {
+    private static final int HEADER = 5; //espaço para o maior varint de um int
+    private byte[] buffer;
+    private int start;
+    private int position;
+
+    public FrameWriter() {
+        buffer = new byte[256];
+    }
+
+    /**
+     * Starts a frame, discarding the previous one.
+     *
+     * @param opcode the opcode of the frame
+     * @return this writer
+     */
+    public FrameWriter begin(int opcode) {
+        position = HEADER;
+        buffer[position++] = (byte) opcode;
+        return this;
+    }
+
+    /**
+     * Appends an unsigned varint.
+     *
+     * @param value a value that is not negative
+     * @return this writer
+     */
+    public FrameWriter putVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Appends a string as its UTF-8 length and bytes.
+     *
+     * @param value the string
+     * @return this writer
+     */
+    public FrameWriter putString(String value) {
+        int length = utf8Length(value);
+        putVarInt(length);
+        ensure(length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | code >> 18);
+                buffer[position++] = (byte) (0x80 | code >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | code >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | code & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?'; //surrogate sozinho, como em String.getBytes
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends the frame by writing its length before the opcode.
+     *
+     * @return this writer
+     * @throws IllegalStateException if the frame is larger than {@link Wire#MAX_FRAME}
+     */
+    public FrameWriter end() {
+        int length = position - HEADER;
+        if (length > Wire.MAX_FRAME) throw new IllegalStateException("Frame of " + length + " bytes is too large");
+        int size = 1;
+        for (int rest = length >>> 7; rest != 0; rest >>>= 7) size++;
+        start = HEADER - size;
+        int index = start;
+        while ((length & ~0x7F) != 0) {
+            buffer[index++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        buffer[index] = (byte) length;
+        return this;
+    }
+
+    /**
+     * Writes the frame, length included, to a stream.
+     *
+     * @param out the stream
+     * @throws IOException if the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, start, position - start);
+    }
+
+    /**
+     * Copies the frame, length included, into a new buffer, for writers that queue it.
+     *
+     * @return a buffer holding the frame
+     */
+    public ByteBuffer copy() {
+        return ByteBuffer.wrap(Arrays.copyOfRange(buffer, start, position));
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) length++;
+            else length += 3;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,82 @@
+package dev.superman.wire;
+
+/**
+ * Constants of the binary TCP protocol, which a client may use instead of text lines.
+ *
+ * <p>Negotiation: a client that wants the binary protocol sends MAGIC, the highest VERSION
+ * it speaks and '\n' as the first bytes of the connection, instead of its temporary name.
+ * MAGIC can never start a UTF-8 line, so the server treats any other first byte as the
+ * start of a text session. A server that speaks the binary protocol answers MAGIC and the
+ * version both will use; from then on both sides only send frames. A client that gets
+ * anything else back is talking to a text-only server and falls back to text lines.</p>
+ *
+ * <p>Frame: the length of what follows as a varint, one opcode byte, then the opcode's
+ * fields. Integers are unsigned varints (7 bits per byte, least significant group first,
+ * high bit set on every byte but the last) and strings are a varint byte count followed by
+ * their UTF-8 bytes, so fields may hold spaces and newlines. Frames are at most MAX_FRAME
+ * bytes.</p>
+ *
+ * <p>Client frames: OPEN(temporary name) must be the first; PONG(); LINE(text command line),
+ * for commands without an opcode; and one opcode per command, from LOGIN to STATS, whose
+ * fields are the command's arguments as strings. NOTIFY has a single field with the whole
+ * message.</p>
+ *
+ * <p>Server frames: TEXT(message), which may hold several lines; USERINFO(name, message);
+ * CHAT(group address, port as varint); CHAT_OFF(); PING().</p>
+ */
+public final class Wire {
+    public static final byte MAGIC = (byte) 0xB5; //byte de continuação em UTF-8, nunca começa uma linha de texto
+    public static final int VERSION = 1;
+    public static final int MAX_FRAME = 64 * 1024;
+
+    public static final int OPEN = 0x01;
+    public static final int PONG = 0x02;
+    public static final int LINE = 0x03;
+    public static final int LOGIN = 0x10;
+    public static final int REGISTER = 0x11;
+    public static final int HELP = 0x12;
+    public static final int PROFILE = 0x13;
+    public static final int LOGOUT = 0x14;
+    public static final int JOIN = 0x15;
+    public static final int HISTORY = 0x16;
+    public static final int ONLINE = 0x17;
+    public static final int REQUEST = 0x18;
+    public static final int ACCEPT = 0x19;
+    public static final int NOTIFY = 0x1A;
+    public static final int STATS = 0x1B;
+
+    public static final int TEXT = 0x81;
+    public static final int USERINFO = 0x82;
+    public static final int CHAT = 0x83;
+    public static final int CHAT_OFF = 0x84;
+    public static final int PING = 0x85;
+
+    private static final String[] COMMANDS = {".login", ".register", ".help", ".profile", ".logout", ".join",
+            ".history", ".online", ".request", ".accept", ".notify", ".stats"};
+
+    private Wire() {}
+
+    /**
+     * Retrieves the text command of a command opcode.
+     *
+     * @param opcode the opcode of a client frame
+     * @return the command, such as ".login", or null if the opcode is not a command
+     */
+    public static String command(int opcode) {
+        int index = opcode - LOGIN;
+        return index >= 0 && index < COMMANDS.length ? COMMANDS[index] : null;
+    }
+
+    /**
+     * Retrieves the opcode of a text command.
+     *
+     * @param command the command, such as ".login", in any case
+     * @return the opcode, or -1 if the command has none
+     */
+    public static int opcode(String command) {
+        if (command.equalsIgnoreCase(".pong")) return PONG;
+        for (int i = 0; i < COMMANDS.length; i++)
+            if (COMMANDS[i].equalsIgnoreCase(command)) return LOGIN + i;
+        return -1;
+    }
+}
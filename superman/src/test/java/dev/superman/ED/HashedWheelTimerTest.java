@@ -0,0 +1,125 @@
+package dev.superman.ED;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link HashedWheelTimer} on a small wheel of 8 ticks of 10 ms, so that delays of
+ * a few hundred milliseconds go around it several times.
+ */
+public class HashedWheelTimerTest {
+    private static final long TICK_MS = 10;
+    private static final int TICKS = 8;
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer("test-timer", TICK_MS, TimeUnit.MILLISECONDS, TICKS);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test(timeout = 10_000)
+    public void runsATaskNoSoonerThanItsDelay() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(ran::countDown, 50, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test(timeout = 10_000)
+    public void delaysLongerThanTheWheelWrapAround() throws Exception {
+        long[] delays = {5, 45, 80, 100, 170, 330, 410}; //até cinco voltas de 80 ms, a pelo menos dois ticks uns dos outros
+        long[] fired = new long[delays.length];
+        CountDownLatch ran = new CountDownLatch(delays.length);
+        long start = System.nanoTime();
+        for (int i = delays.length - 1; i >= 0; i--) {
+            int index = i;
+            timer.newTimeout(() -> {
+                fired[index] = System.nanoTime() - start;
+                ran.countDown();
+            }, delays[i], TimeUnit.MILLISECONDS);
+        }
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        long turn = TimeUnit.MILLISECONDS.toNanos(TICK_MS * TICKS);
+        for (int i = 0; i < delays.length; i++) {
+            long delay = TimeUnit.MILLISECONDS.toNanos(delays[i]);
+            assertTrue("task " + delays[i] + " ms ran early", fired[i] >= delay);
+            assertTrue("task " + delays[i] + " ms ran a turn late", fired[i] < delay + turn);
+            if (i > 0) assertTrue("tasks ran out of order", fired[i] >= fired[i - 1]);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelledTasksDoNotRun() throws Exception {
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        CountDownLatch later = new CountDownLatch(1);
+        HashedWheelTimer.Timeout cancelled = timer.newTimeout(() -> cancelledRan.set(true), 100, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout wrapped = timer.newTimeout(() -> cancelledRan.set(true), 200, TimeUnit.MILLISECONDS);
+        timer.newTimeout(later::countDown, 300, TimeUnit.MILLISECONDS);
+        Thread.sleep(20); //o primeiro já está na roda
+        assertTrue(cancelled.cancel());
+        assertTrue(wrapped.cancel());
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+        assertTrue(cancelled.isCancelled());
+        assertFalse(cancelled.isExpired());
+    }
+
+    @Test(timeout = 10_000)
+    public void aTaskThatThrowsDoesNotStopTheTimer() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        timer.newTimeout(() -> {
+            throw new IllegalStateException("expected by the test");
+        }, 10, TimeUnit.MILLISECONDS);
+        timer.newTimeout(ran::countDown, 40, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void runsEveryTaskOfConcurrentCallers() throws Exception {
+        int callers = 4;
+        int perCaller = 1_000;
+        CountDownLatch ran = new CountDownLatch(callers * perCaller);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < callers; c++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perCaller; i++)
+                    timer.newTimeout(ran::countDown, i % 200, TimeUnit.MILLISECONDS);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void stopDiscardsPendingTasks() throws Exception {
+        AtomicInteger ran = new AtomicInteger();
+        timer.newTimeout(ran::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+        Thread.sleep(20);
+        timer.stop();
+        Thread.sleep(200);
+        assertEquals(0, ran.get());
+    }
+}
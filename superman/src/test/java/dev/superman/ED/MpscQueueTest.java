@@ -0,0 +1,110 @@
+package dev.superman.ED;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MpscQueue} with one and with several producers.
+ */
+public class MpscQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int PER_PRODUCER = 100_000;
+
+    @Test
+    public void pollsInInsertionOrder() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 10; i++)
+            queue.add(i);
+        for (int i = 0; i < 10; i++)
+            assertEquals(Integer.valueOf(i), queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void drainsAtMostMaxElements() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        for (int i = 0; i < 10; i++)
+            queue.add(i);
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained, 4));
+        assertEquals(List.of(0, 1, 2, 3), drained);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 30_000)
+    public void takeReceivesEveryElementOfConcurrentProducersInTheirOrder() throws Exception {
+        MpscQueue<long[]> queue = new MpscQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < PER_PRODUCER; i++)
+                    queue.add(new long[] {producer, i});
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        start.countDown();
+        long[] next = new long[PRODUCERS];
+        for (int i = 0; i < PRODUCERS * PER_PRODUCER; i++) {
+            long[] element = queue.take();
+            assertEquals("order of producer " + element[0], next[(int) element[0]], element[1]);
+            next[(int) element[0]]++;
+        }
+        for (Thread thread : producers)
+            thread.join();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 10_000)
+    public void takeParksUntilAnElementIsAdded() throws Exception {
+        MpscQueue<String> queue = new MpscQueue<>();
+        AtomicReference<String> taken = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(queue.take());
+            } catch (InterruptedException ignored) {}
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) Thread.onSpinWait(); //espera que o consumidor estacione
+        queue.add("wake");
+        consumer.join();
+        assertEquals("wake", taken.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void takeThrowsWhenInterrupted() throws Exception {
+        MpscQueue<String> queue = new MpscQueue<>();
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (InterruptedException e) {
+                thrown.set(e);
+            }
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) Thread.onSpinWait();
+        consumer.interrupt();
+        consumer.join();
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+}
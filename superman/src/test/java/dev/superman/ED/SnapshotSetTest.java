@@ -0,0 +1,101 @@
+package dev.superman.ED;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SnapshotSet}, including concurrent writers.
+ */
+public class SnapshotSetTest {
+
+    @Test
+    public void storesEachElementOnce() {
+        SnapshotSet<String> set = new SnapshotSet<>();
+        assertTrue(set.add("a"));
+        assertFalse(set.add("a"));
+        assertTrue(set.add("b"));
+        assertEquals(2, set.size());
+        assertTrue(set.contains("a"));
+        assertTrue(set.remove("a"));
+        assertFalse(set.remove("a"));
+        assertFalse(set.contains("a"));
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void iteratorKeepsTheSetAsItWas() {
+        SnapshotSet<String> set = new SnapshotSet<>();
+        set.add("a");
+        set.add("b");
+        Iterator<String> iterator = set.iterator();
+        set.remove("a");
+        set.add("c");
+        List<String> seen = new ArrayList<>();
+        iterator.forEachRemaining(seen::add);
+        assertEquals(List.of("a", "b"), seen);
+        assertEquals(List.of("b", "c"), set.snapshot());
+    }
+
+    @Test(timeout = 30_000)
+    public void concurrentWritersLoseNoUpdate() throws Exception {
+        SnapshotSet<Integer> set = new SnapshotSet<>();
+        int threads = 4;
+        int perThread = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = first; i < first + perThread; i++)
+                    set.add(i);
+                for (int i = first; i < first + perThread; i += 2) //tira os pares de cada escritor
+                    set.remove(i);
+            });
+            thread.start();
+            writers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : writers)
+            thread.join();
+        assertEquals(threads * perThread / 2, set.size());
+        for (int i = 0; i < threads * perThread; i++)
+            assertEquals(i % 2 == 1, set.contains(i));
+    }
+
+    @Test(timeout = 30_000)
+    public void exactlyOneConcurrentRemoveClaimsAnElement() throws Exception {
+        SnapshotSet<Integer> set = new SnapshotSet<>();
+        int elements = 1_000;
+        for (int i = 0; i < elements; i++)
+            set.add(i);
+        AtomicInteger claimed = new AtomicInteger();
+        List<Thread> removers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < elements; i++)
+                    if (set.remove(i)) claimed.incrementAndGet();
+            });
+            thread.start();
+            removers.add(thread);
+        }
+        for (Thread thread : removers)
+            thread.join();
+        assertEquals(elements, claimed.get());
+        assertTrue(set.isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package dev.superman.ED;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SpscRingBuffer}, alone and with a producer and a consumer on their own threads.
+ */
+public class SpscRingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToAPowerOfTwo() {
+        assertEquals(1, new SpscRingBuffer<>(1).capacity());
+        assertEquals(8, new SpscRingBuffer<>(5).capacity());
+        assertEquals(4096, new SpscRingBuffer<>(4096).capacity());
+    }
+
+    @Test
+    public void refusesOffersWhenFull() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++)
+            assertTrue(ring.offer(i));
+        assertTrue(ring.isFull());
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, ring.drain(drained::add, 1));
+        assertFalse(ring.isFull());
+        assertTrue(ring.offer(4));
+        assertEquals(4, ring.drain(drained::add, 10));
+        assertEquals(List.of(0, 1, 2, 3, 4), drained);
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.drain(drained::add, 10));
+    }
+
+    @Test
+    public void wrapsAroundTheSlots() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ring.offer(i));
+            if (i % 3 == 2) ring.drain(drained::add, 3);
+        }
+        ring.drain(drained::add, 4);
+        assertEquals(100, drained.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals(Integer.valueOf(i), drained.get(i));
+    }
+
+    @Test(timeout = 30_000)
+    public void consumerReceivesEveryElementInOrder() throws Exception {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(64);
+        int count = 200_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++)
+                while (!ring.offer(i)) Thread.onSpinWait(); //o anel está cheio, espera pelo consumidor
+        });
+        producer.start();
+        int[] next = new int[1];
+        while (next[0] < count) {
+            ring.await();
+            ring.drain(element -> assertEquals(next[0]++, element.intValue()), 16);
+        }
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test(timeout = 10_000)
+    public void awaitThrowsWhenInterrupted() throws Exception {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        boolean[] interrupted = new boolean[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                ring.await();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) Thread.onSpinWait();
+        consumer.interrupt();
+        consumer.join();
+        assertTrue(interrupted[0]);
+    }
+}
@@ -0,0 +1,186 @@
+package dev.superman.server.protocols;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link ChatLog}: reads by range, and the recovery of a room from what is on disk
+ * after a restart, a lost or stale index, a torn last record or a failed write.
+ */
+public class ChatLogTest {
+    private static final int INDEX_ENTRY_BYTES = Integer.BYTES + Long.BYTES;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Path directory;
+    private Path legacyFile;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("ROOM");
+        legacyFile = folder.getRoot().toPath().resolve("ROOM.txt");
+    }
+
+    @Test
+    public void readsAnyRangeOfRecords() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 1000);
+        assertEquals(1000, log.getNextSequence());
+        assertEquals(records(990, 1000), log.read(Long.MAX_VALUE, 10));
+        assertEquals(records(120, 140), log.read(140, 20)); //atravessa a entrada 128 do índice
+        assertEquals(records(0, 5), log.read(5, 100));
+        assertTrue(log.read(0, 10).isEmpty());
+        log.close();
+    }
+
+    @Test
+    public void reloadsRecordsAndIndexAfterRestart() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 1000);
+        log.close();
+        assertEquals(1000 / 128 * INDEX_ENTRY_BYTES, Files.size(indexPath()));
+        ChatLog reloaded = new ChatLog(directory, legacyFile);
+        assertEquals(1000, reloaded.getNextSequence());
+        assertEquals(records(500, 520), reloaded.read(520, 20));
+        write(reloaded, 1000, 1010);
+        assertEquals(records(995, 1010), reloaded.read(Long.MAX_VALUE, 15));
+        reloaded.close();
+    }
+
+    @Test
+    public void rebuildsAMissingIndex() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 1000);
+        log.close();
+        byte[] index = Files.readAllBytes(indexPath());
+        Files.delete(indexPath());
+        ChatLog reloaded = new ChatLog(directory, legacyFile);
+        assertArrayEquals(index, Files.readAllBytes(indexPath()));
+        assertEquals(records(700, 710), reloaded.read(710, 10));
+        reloaded.close();
+    }
+
+    @Test
+    public void dropsIndexEntriesPastTheEndOfTheData() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 1000);
+        log.close();
+        long end = 0;
+        for (String record : records(0, 500)) end += record.length() + 1;
+        try (FileChannel channel = FileChannel.open(logPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(end); //perdeu-se o fim dos dados, mas não o do índice
+        }
+        ChatLog reloaded = new ChatLog(directory, legacyFile);
+        assertEquals(500, reloaded.getNextSequence());
+        assertEquals(500 / 128 * INDEX_ENTRY_BYTES, Files.size(indexPath()));
+        write(reloaded, 500, 700);
+        assertEquals(records(480, 700), reloaded.read(Long.MAX_VALUE, 220));
+        reloaded.close();
+        ChatLog again = new ChatLog(directory, legacyFile);
+        assertEquals(records(630, 650), again.read(650, 20));
+        again.close();
+    }
+
+    @Test
+    public void completesATornLastRecord() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 10);
+        log.close();
+        Files.write(logPath(), "torn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        ChatLog reloaded = new ChatLog(directory, legacyFile);
+        assertEquals(11, reloaded.getNextSequence());
+        write(reloaded, 11, 12);
+        assertEquals(List.of("message 9", "torn", "message 11"), reloaded.read(Long.MAX_VALUE, 3));
+        reloaded.close();
+    }
+
+    @Test
+    public void reopenTruncatesBytesThatWereNotPublished() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 200);
+        long published = Files.size(logPath());
+        Files.write(logPath(), "half a rec".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND); //uma escrita que falhou a meio
+        log.reopen();
+        assertEquals(published, Files.size(logPath()));
+        write(log, 200, 300);
+        assertEquals(records(190, 300), log.read(Long.MAX_VALUE, 110));
+        log.close();
+        ChatLog reloaded = new ChatLog(directory, legacyFile);
+        assertEquals(300, reloaded.getNextSequence());
+        assertEquals(records(250, 260), reloaded.read(260, 10));
+        reloaded.close();
+    }
+
+    @Test
+    public void failedWriteCanBeRetriedAfterReopen() throws IOException {
+        ChatLog log = new ChatLog(directory, legacyFile);
+        write(log, 0, 10);
+        log.close(); //o canal fechado faz falhar a escrita seguinte
+        List<ByteBuffer> batch = batch(10, 20);
+        try {
+            log.write(batch);
+            throw new AssertionError("write on a closed log succeeded");
+        } catch (IOException expected) {}
+        for (ByteBuffer buffer : batch)
+            assertEquals(0, buffer.position());
+        log.reopen();
+        log.write(batch);
+        assertEquals(20, log.getNextSequence());
+        assertEquals(records(0, 20), log.read(Long.MAX_VALUE, 20));
+        log.close();
+    }
+
+    @Test
+    public void movesALegacyRoomFileIntoTheFirstSegment() throws IOException {
+        Files.write(legacyFile, "old one\nold two".getBytes(StandardCharsets.UTF_8));
+        ChatLog log = new ChatLog(directory, legacyFile);
+        assertFalse(Files.exists(legacyFile));
+        assertEquals(2, log.getNextSequence());
+        assertEquals(List.of("old one", "old two"), log.read(Long.MAX_VALUE, 10));
+        log.close();
+    }
+
+    private Path logPath() {
+        return directory.resolve(String.format("%020d", 0) + ".log");
+    }
+
+    private Path indexPath() {
+        return directory.resolve(String.format("%020d", 0) + ".idx");
+    }
+
+    private static void write(ChatLog log, int from, int to) throws IOException {
+        for (int i = from; i < to; i += 50) //vários lotes, como os do RoomLogWriter
+            log.write(batch(i, Math.min(i + 50, to)));
+    }
+
+    private static List<ByteBuffer> batch(int from, int to) {
+        List<ByteBuffer> batch = new ArrayList<>();
+        for (String record : records(from, to))
+            batch.add(ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8)));
+        return batch;
+    }
+
+    private static List<String> records(int from, int to) {
+        List<String> records = new ArrayList<>();
+        for (int i = from; i < to; i++)
+            records.add("message " + i);
+        return records;
+    }
+}
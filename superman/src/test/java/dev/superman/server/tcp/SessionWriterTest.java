@@ -0,0 +1,60 @@
+package dev.superman.server.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import dev.superman.wire.FrameReader;
+import dev.superman.wire.Wire;
+
+/**
+ * Tests that {@link SessionWriter.Binary} sends messages too long for one frame as
+ * several TEXT frames that hold the whole message.
+ */
+public class SessionWriterTest {
+
+    @Test
+    public void sendsAShortMessageInOneFrame() throws IOException {
+        List<String> frames = textFrames("one\ntwo");
+        assertEquals(List.of("one\ntwo"), frames);
+    }
+
+    @Test
+    public void splitsALongMessageBetweenLines() throws IOException {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 10_000; i++)
+            message.append("linha ").append(i).append(" com €\n");
+        message.setLength(message.length() - 1);
+        List<String> frames = textFrames(message.toString());
+        assertTrue(frames.size() > 1);
+        assertEquals(message.toString(), String.join("\n", frames)); //o cliente lê cada frame linha a linha
+    }
+
+    @Test
+    public void splitsALongLineWithoutBreakingSurrogatePairs() throws IOException {
+        String line = "€".repeat(30_000) + "😀".repeat(20_000);
+        List<String> frames = textFrames(line);
+        assertTrue(frames.size() > 1);
+        assertEquals(line, String.join("", frames));
+    }
+
+    private static List<String> textFrames(String message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SessionWriter.Binary(frame -> frame.writeTo(out)).text(message);
+        FrameReader reader = new FrameReader();
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        List<String> frames = new ArrayList<>();
+        while (reader.read(in)) {
+            assertEquals(Wire.TEXT, reader.opcode());
+            frames.add(reader.getString());
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,165 @@
+package dev.superman.wire;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that frames written by {@link FrameWriter} are read back by {@link FrameReader},
+ * from a stream and from buffers split anywhere, up to {@link Wire#MAX_FRAME}.
+ */
+public class FrameCodecTest {
+
+    @Test
+    public void roundTripsVarInts() throws IOException {
+        int[] values = {0, 1, 127, 128, 255, 16_383, 16_384, 2_097_151, 2_097_152, Wire.MAX_FRAME, Integer.MAX_VALUE};
+        FrameWriter writer = new FrameWriter().begin(Wire.CHAT);
+        for (int value : values)
+            writer.putVarInt(value);
+        FrameReader reader = read(writer.end());
+        assertEquals(Wire.CHAT, reader.opcode());
+        for (int value : values)
+            assertEquals(value, reader.getVarInt());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void roundTripsStringsAsUtf8() throws IOException {
+        String[] values = {"", "ascii", "linha\ncom espaços", "ação €", "emoji 😀 and 𝄞", "x".repeat(1000)};
+        FrameWriter writer = new FrameWriter().begin(Wire.TEXT);
+        for (String value : values)
+            writer.putString(value);
+        FrameReader reader = read(writer.end());
+        for (String value : values)
+            assertEquals(value, reader.getString());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void encodesLoneSurrogatesLikeStringGetBytes() throws IOException {
+        String value = "a\uD800b\uDC00c";
+        FrameReader reader = read(new FrameWriter().begin(Wire.TEXT).putString(value).end());
+        assertEquals(new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), reader.getString());
+    }
+
+    @Test
+    public void readsCommandFramesAsTextCommands() throws IOException {
+        FrameWriter writer = new FrameWriter().begin(Wire.LOGIN).putString("ann").putString("pass word").end();
+        FrameReader reader = read(writer);
+        assertEquals(".login", Wire.command(reader.opcode()));
+        assertArrayEquals(new String[] {".login", "ann", "pass word"}, reader.getStrings(".login"));
+        assertEquals(Wire.LOGIN, Wire.opcode(".LOGIN"));
+        assertEquals(-1, Wire.opcode(".unknown"));
+    }
+
+    @Test
+    public void acceptsAFrameOfExactlyMaxFrameBytes() throws IOException {
+        String value = "y".repeat(Wire.MAX_FRAME - 1 - 3); //opcode e um varint de 3 bytes
+        FrameWriter writer = new FrameWriter().begin(Wire.TEXT).putString(value).end();
+        assertEquals(Wire.MAX_FRAME + 3, writer.copy().remaining()); //mais o varint do tamanho
+        assertEquals(value, read(writer).getString());
+        assertEquals(value, decodeInPieces(writer.copy(), 1000).getString());
+    }
+
+    @Test
+    public void refusesToWriteAFrameLargerThanMaxFrame() {
+        FrameWriter writer = new FrameWriter().begin(Wire.TEXT).putString("y".repeat(Wire.MAX_FRAME - 1 - 3 + 1));
+        try {
+            writer.end();
+            fail("a frame over MAX_FRAME was written");
+        } catch (IllegalStateException expected) {}
+        assertTrue(new FrameWriter().begin(Wire.PING).end().copy().hasRemaining()); //o writer continua utilizável
+    }
+
+    @Test
+    public void rejectsFrameLengthsOutOfRange() {
+        for (byte[] frame : new byte[][] {{0}, {(byte) 0x81, (byte) 0x80, 0x04}, {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01}}) {
+            try {
+                new FrameReader().read(new ByteArrayInputStream(frame));
+                fail("length " + Arrays.toString(frame) + " was accepted from a stream");
+            } catch (IOException expected) {}
+            try {
+                new FrameReader().decode(ByteBuffer.wrap(frame));
+                fail("length " + Arrays.toString(frame) + " was accepted from a buffer");
+            } catch (IOException expected) {}
+        }
+    }
+
+    @Test
+    public void rejectsFieldsPastTheEndOfTheFrame() throws IOException {
+        FrameReader reader = read(new FrameWriter().begin(Wire.TEXT).putVarInt(10).end()); //diz 10 bytes e não tem nenhum
+        try {
+            reader.getString();
+            fail("a string past the end of the frame was read");
+        } catch (IOException expected) {}
+    }
+
+    @Test
+    public void tellsAStreamThatEndsBetweenFramesFromOneThatEndsInside() throws IOException {
+        FrameReader reader = new FrameReader();
+        assertFalse(reader.read(new ByteArrayInputStream(new byte[0])));
+        byte[] frame = bytes(new FrameWriter().begin(Wire.TEXT).putString("cut short").end());
+        try {
+            reader.read(new ByteArrayInputStream(Arrays.copyOf(frame, frame.length - 2)));
+            fail("a truncated frame was read");
+        } catch (EOFException expected) {}
+    }
+
+    @Test
+    public void decodesFramesSplitAnywhere() throws IOException {
+        FrameWriter writer = new FrameWriter();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++)
+            writer.begin(Wire.USERINFO).putString("user" + i).putString("ç".repeat(i * 7)).end().writeTo(stream);
+        byte[] all = stream.toByteArray();
+        for (int piece : new int[] {1, 2, 3, 7, 64, all.length}) {
+            FrameReader reader = new FrameReader();
+            int frames = 0;
+            for (int offset = 0; offset < all.length; offset += piece) {
+                ByteBuffer in = ByteBuffer.wrap(all, offset, Math.min(piece, all.length - offset));
+                while (reader.decode(in)) {
+                    assertEquals(Wire.USERINFO, reader.opcode());
+                    assertEquals("user" + frames, reader.getString());
+                    assertEquals("ç".repeat(frames * 7), reader.getString());
+                    frames++;
+                }
+            }
+            assertEquals("pieces of " + piece + " bytes", 50, frames);
+        }
+    }
+
+    private static FrameReader read(FrameWriter frame) throws IOException {
+        FrameReader reader = new FrameReader();
+        assertTrue(reader.read(new ByteArrayInputStream(bytes(frame))));
+        return reader;
+    }
+
+    private static FrameReader decodeInPieces(ByteBuffer frame, int piece) throws IOException {
+        FrameReader reader = new FrameReader();
+        byte[] all = new byte[frame.remaining()];
+        frame.get(all);
+        for (int offset = 0; offset < all.length; offset += piece) {
+            boolean complete = reader.decode(ByteBuffer.wrap(all, offset, Math.min(piece, all.length - offset)));
+            assertEquals(offset + piece >= all.length, complete);
+        }
+        return reader;
+    }
+
+    private static byte[] bytes(FrameWriter frame) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frame.writeTo(out);
+        return out.toByteArray();
+    }
+}